@@ -0,0 +1,263 @@
+package ie.gmit.sw;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmarks class
+ * Measures the hot paths of the language detector on a generated corpus:
+ * 
+ * ingest
+ * 		-Training throughput of the IngestPipeline, the same pipeline Menu uses.
+ * 
+ * resize
+ * 		-Time taken by Database.resize() on fully trained frequency tables.
+ * 
+ * detect
+ * 		-Per query detection latency for queries of 100, 1000 and 10000 characters.
+ * 
+ * score
+ * 		-The out of place distance kernels on their own, one query profile against every language profile:
+ * 		 a hash probe per query kmer (RankedProfile.getRank), a binary search of the ProfileColumns,
+ * 		 the ProfileColumns merge join (including sorting the query) and the InvertedIndex.
+ * 
+ * Each benchmark runs a number of warm up iterations followed by measured iterations,
+ * and prints the mean and best time per iteration and the throughput.
+ * Run with bench/run.sh, passing the names of the benchmarks to run (default all of them).
+ * The corpus size can be changed with -Dbench.languages, -Dbench.lines and -Dbench.lineLength,
+ * and the number of dataset readers used for ingest with -Dbench.readers.
+ * The profile settings are taken from -Dprofile.minN, -Dprofile.maxN, -Dprofile.size and -Dprofile.hash (see ProfileConfig),
+ * so the accuracy and speed of different settings can be compared.
+ * -Dtraining.heavyHitters=n trains with bounded memory (see Database.setHeavyHitters()).
+ * 
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class Benchmarks {
+
+	// corpus settings
+	private static final int LANGUAGES = Integer.getInteger("bench.languages", 50);
+	private static final int LINES = Integer.getInteger("bench.lines", 200);
+	private static final int LINE_LENGTH = Integer.getInteger("bench.lineLength", 300);
+	private static final long SEED = 2019;
+	private static final int READERS = Integer.getInteger("bench.readers", 1);
+
+	// iteration settings
+	private static final int WARMUPS = Integer.getInteger("bench.warmups", 3);
+	private static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+
+	private static final ProfileConfig CONFIG = ProfileConfig.fromSystemProperties();
+
+	// keeps results alive so the JIT can not remove the work being measured
+	static volatile Object sink;
+
+	/**
+	 * A unit of work. Returns the number of operations it did, used to work out the throughput.
+	 */
+	private interface Op {
+		long run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<String> selected = Arrays.asList(args);
+		CorpusGenerator gen = new CorpusGenerator(LANGUAGES, SEED);
+
+		Path corpus = Files.createTempFile("wili-bench", ".txt");
+		corpus.toFile().deleteOnExit();
+		gen.write(corpus, LINES, LINE_LENGTH);
+
+		System.out.println("Corpus: " + LANGUAGES + " languages x " + LINES + " lines x " + LINE_LENGTH + " chars");
+		System.out.println("Profile: " + CONFIG);
+
+		if (selected.isEmpty() || selected.contains("ingest")) {
+			measure("ingest", "lines", () -> {
+				sink = train(corpus);
+				return (long) LANGUAGES * LINES;
+			});
+		}
+
+		if (selected.isEmpty() || selected.contains("resize")) {
+			// training is not part of the measurement, so each iteration trains first
+			measureEach("resize(" + CONFIG.getProfileSize() + ")", "languages", () -> train(corpus), db -> {
+				db.resize();
+				sink = db;
+				return LANGUAGES;
+			});
+		}
+
+		if (selected.isEmpty() || selected.contains("detect")) {
+			Database db = train(corpus);
+			db.resize();
+			ExecuteQuery exQuery = new ExecuteQuery(null, db);
+
+			for (int length : new int[] {100, 1000, 10000}) {
+				// the same queries every run
+				CorpusGenerator queries = new CorpusGenerator(LANGUAGES, SEED);
+				String[] texts = new String[200];
+				for (int i = 0; i < texts.length; i++) {
+					texts[i] = queries.text(i % LANGUAGES, length);
+				}
+
+				measure("detect " + length + " chars", "queries", () -> {
+					for (String text : texts) {
+						sink = exQuery.detect(text);
+					}
+					return texts.length;
+				});
+			}
+		}
+
+		if (selected.isEmpty() || selected.contains("score")) {
+			Database db = train(corpus);
+			db.resize();
+			score(db);
+		}
+	}
+
+	// one query profile of 1000 characters per language, scored against every language by each kernel
+	private static void score(Database db) throws Exception {
+		InvertedIndex idx = db.getIndex();
+		ProfileColumns columns = idx.getColumns();
+		int langs = columns.size();
+		RankedProfile[] subjects = new RankedProfile[langs];
+		for (int l = 0; l < langs; l++) {
+			subjects[l] = db.getProfile(columns.getLanguage(l));
+		}
+
+		CorpusGenerator queries = new CorpusGenerator(LANGUAGES, SEED + 1);
+		QueryProfiler profiler = new QueryProfiler(db);
+		long[][] kmers = new long[LANGUAGES][];
+		int[][] ranks = new int[LANGUAGES][];
+		for (int q = 0; q < LANGUAGES; q++) {
+			profiler.reset();
+			profiler.count(queries.text(q, 1000));
+			RankedProfile query = profiler.profile();
+			kmers[q] = new long[query.size()];
+			ranks[q] = new int[query.size()];
+			for (int rank = 1; rank <= query.size(); rank++) {
+				kmers[q][rank - 1] = query.getKmer(rank);
+				ranks[q][rank - 1] = rank;
+			}
+		}
+		long pairs = (long) LANGUAGES * langs;
+		int[] out = new int[langs];
+
+		measure("score hash probe", "pairs", () -> {
+			long total = 0;
+			for (int q = 0; q < LANGUAGES; q++) {
+				for (RankedProfile subject : subjects) {
+					for (int i = 0; i < kmers[q].length; i++) {
+						int rank = subject.getRank(kmers[q][i]);
+						total += rank == 0 ? subject.size() + 1 : rank - ranks[q][i];
+					}
+				}
+			}
+			sink = total;
+			return pairs;
+		});
+
+		measure("score binary search", "pairs", () -> {
+			long total = 0;
+			for (int q = 0; q < LANGUAGES; q++) {
+				for (int l = 0; l < langs; l++) {
+					for (int i = 0; i < kmers[q].length; i++) {
+						int rank = columns.getRank(l, kmers[q][i]);
+						total += rank == 0 ? columns.getProfileSize(l) + 1 : rank - ranks[q][i];
+					}
+				}
+			}
+			sink = total;
+			return pairs;
+		});
+
+		measure("score merge join", "pairs", () -> {
+			long total = 0;
+			for (int q = 0; q < LANGUAGES; q++) {
+				long[] sorted = kmers[q].clone();
+				int[] sortedRanks = ranks[q].clone();
+				ProfileColumns.sort(sorted, sortedRanks, sorted.length);
+				for (int l = 0; l < langs; l++) {
+					total += columns.distance(l, sorted, sortedRanks, sorted.length);
+				}
+			}
+			sink = total;
+			return pairs;
+		});
+
+		measure("score inverted index", "pairs", () -> {
+			long total = 0;
+			for (int q = 0; q < LANGUAGES; q++) {
+				idx.distances(kmers[q], ranks[q], kmers[q].length, out);
+				total += out[0];
+			}
+			sink = total;
+			return pairs;
+		});
+	}
+
+	/**
+	 * Trains a Database from the corpus with the IngestPipeline Menu uses.
+	 * resize() is not called.
+	 * 
+	 * @param corpus
+	 * @return
+	 * @throws Exception
+	 */
+	private static Database train(Path corpus) throws Exception {
+		Database db = new Database(CONFIG);
+		db.setHeavyHitters(Integer.getInteger("training.heavyHitters", 0));
+		IngestPipeline pipeline = new IngestPipeline(corpus.toString());
+		pipeline.setReaders(READERS);
+		pipeline.run(db);
+		return db;
+	}
+
+	// times op over the warm up and measured iterations
+	private static void measure(String name, String unit, Op op) throws Exception {
+		measureEach(name, unit, () -> null, ignored -> op.run());
+	}
+
+	/**
+	 * Setup for one iteration, not included in the time.
+	 */
+	private interface Setup<T> {
+		T get() throws Exception;
+	}
+
+	/**
+	 * Timed part of one iteration.
+	 */
+	private interface Timed<T> {
+		long run(T state) throws Exception;
+	}
+
+	// runs setup then times the op, for the warm up and measured iterations
+	private static <T> void measureEach(String name, String unit, Setup<T> setup, Timed<T> op) throws Exception {
+		for (int i = 0; i < WARMUPS; i++) {
+			op.run(setup.get());
+		}
+
+		long total = 0;
+		long best = Long.MAX_VALUE;
+		long ops = 0;
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			T state = setup.get();
+			long start = System.nanoTime();
+			ops += op.run(state);
+			long time = System.nanoTime() - start;
+
+			total += time;
+			best = Math.min(best, time);
+		}
+
+		double meanMs = total / 1e6 / ITERATIONS;
+		double perSecond = ops / (total / 1e9);
+		double perOpUs = total / 1e3 / ops;
+		System.out.printf("%-24s mean %10.3f ms  best %10.3f ms  %12.1f %s/s  %10.3f us/op%n",
+				name, meanMs, best / 1e6, perSecond, unit, perOpUs);
+	}
+}
@@ -0,0 +1,115 @@
+package ie.gmit.sw;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * CorpusGenerator class
+ * Generates reproducible WiLI style text@label data for the benchmarks, so they can run offline.
+ * Each synthetic language has its own skewed letter distribution and vocabulary,
+ * which gives the languages distinct kmer profiles like real languages have.
+ * The same seed always generates the same corpus.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class CorpusGenerator {
+
+	// variables
+	private final Language[] languages;
+	private final String[][] vocabularies;
+	private final Random random;
+
+	/**
+	 * Creates a generator for the first n languages of the Language enum.
+	 *
+	 * @param n
+	 * @param seed
+	 */
+	public CorpusGenerator(int n, long seed) {
+		super();
+		this.random = new Random(seed);
+		this.languages = new Language[n];
+		this.vocabularies = new String[n][];
+
+		for (int l = 0; l < n; l++) {
+			languages[l] = Language.values()[l];
+			vocabularies[l] = vocabulary(500);
+		}
+	}
+
+	// accessor method
+	public Language[] getLanguages() {
+		return languages.clone();
+	}
+
+	/**
+	 * Returns a text of about the given number of characters in language l.
+	 *
+	 * @param l
+	 * @param chars
+	 * @return
+	 */
+	public String text(int l, int chars) {
+		StringBuilder sb = new StringBuilder(chars + 16);
+		String[] words = vocabularies[l];
+
+		while (sb.length() < chars) {
+			// Zipf like choice, the first words of the vocabulary are the most common
+			int w = (int) (words.length * Math.pow(random.nextDouble(), 3));
+			sb.append(words[w]).append(' ');
+		}
+		sb.setLength(chars);
+		return sb.toString();
+	}
+
+	/**
+	 * Writes a WiLI style file with the given number of lines per language, each about lineLength characters.
+	 *
+	 * @param file
+	 * @param linesPerLanguage
+	 * @param lineLength
+	 * @throws IOException
+	 */
+	public void write(Path file, int linesPerLanguage, int lineLength) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < linesPerLanguage; i++) {
+				for (int l = 0; l < languages.length; l++) {
+					out.write(text(l, lineLength));
+					out.write('@');
+					out.write(languages[l].name());
+					out.newLine();
+				}
+			}
+		}
+	}
+
+	// builds the vocabulary of one language from its own skewed alphabet
+	private String[] vocabulary(int size) {
+		// each language favours a different slice of the alphabet, some use accented or Cyrillic letters
+		char base = random.nextInt(4) == 0 ? '\u0430' : 'a';
+		int letters = 12 + random.nextInt(14);
+		char[] alphabet = new char[letters];
+		int offset = random.nextInt(26 - Math.min(letters, 25));
+		for (int i = 0; i < letters; i++) {
+			alphabet[i] = (char) (base + (offset + i * 7) % 26);
+		}
+
+		String[] words = new String[size];
+		for (int w = 0; w < size; w++) {
+			int length = 1 + random.nextInt(8);
+			char[] word = new char[length];
+			for (int c = 0; c < length; c++) {
+				// favour the first letters of the alphabet
+				word[c] = alphabet[(int) (letters * Math.pow(random.nextDouble(), 2))];
+			}
+			words[w] = new String(word);
+		}
+		return words;
+	}
+}
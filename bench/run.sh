@@ -0,0 +1,13 @@
+#!/bin/sh
+# Compiles the detector and the benchmarks and runs them.
+# Usage: bench/run.sh [ingest] [resize] [detect] [score]
+# JVM options such as -Dbench.iterations=10 can be passed in JAVA_OPTS.
+set -e
+cd "$(dirname "$0")/.."
+
+OUT=target/bench
+rm -rf "$OUT"
+mkdir -p "$OUT"
+
+javac -encoding UTF-8 -d "$OUT" src/ie/gmit/sw/*.java bench/ie/gmit/sw/*.java
+java $JAVA_OPTS -cp "$OUT" ie.gmit.sw.Benchmarks "$@"
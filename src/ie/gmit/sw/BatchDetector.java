@@ -0,0 +1,208 @@
+package ie.gmit.sw;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * BatchDetector class
+ * Detects the language of many documents in parallel against a read only Database.
+ * The database must be complete (resize() called or loaded from a ProfileFile) before it is used.
+ *
+ * detect(Stream&lt;String&gt; texts)
+ * 		-Detects the language of each text. The id of each result is its position in the stream.
+ *
+ * detectDirectory(Path dir)
+ * 		-Detects the language of each regular file in the directory. The id of each result is the file name.
+ *
+ * detectWiLI(Path file)
+ * 		-Detects the language of each text@label line of a WiLI file, the same format the Parser reads.
+ * 		-The id of each result is its line number and the label is kept as the expected language.
+ *
+ * The documents are split into slices and each slice is classified by a worker of the pool.
+ * Results are returned in the same order as the documents.
+ * A document with no letters (empty, or only digits and punctuation) is undetermined: its result has a null language.
+ * setCache() puts a DetectionCache, shared by every worker, in front of the detections.
+ * The pool comes from Workers, so the slices can run on platform threads, a ForkJoinPool or virtual threads.
+ * close() shuts down the worker pool.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class BatchDetector implements AutoCloseable {
+
+	// each worker gets about this many slices so that a slow slice does not hold up the batch
+	private static final int SLICES_PER_WORKER = 4;
+
+	// variables
+	private final Database db;
+	private final int workers;
+	private final ExecutorService pool;
+	private volatile DetectionCache cache = null;
+
+	// constructors
+	public BatchDetector(Database db) {
+		this(db, Workers.defaultCount());
+	}
+
+	public BatchDetector(Database db, int workers) {
+		this(db, Workers.defaultMode(), workers);
+	}
+
+	public BatchDetector(Database db, Workers.Mode mode, int workers) {
+		super();
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers must be at least 1");
+		}
+		this.db = db;
+		this.workers = workers;
+		this.pool = Workers.newExecutor(mode, workers);
+	}
+
+	// accessor methods
+	public int getWorkers() {
+		return workers;
+	}
+
+	public DetectionCache getCache() {
+		return cache;
+	}
+
+	public void setCache(DetectionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Detects the language of each text.
+	 *
+	 * @param texts
+	 * @return
+	 */
+	public List<DetectionResult> detect(Stream<String> texts) {
+		String[] docs = texts.toArray(String[]::new);
+		String[] ids = new String[docs.length];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = String.valueOf(i);
+		}
+		return run(ids, docs, new String[docs.length]);
+	}
+
+	/**
+	 * Detects the language of each regular file in the directory, in file name order. The files are read as UTF-8.
+	 *
+	 * @param dir
+	 * @return
+	 * @throws IOException
+	 */
+	public List<DetectionResult> detectDirectory(Path dir) throws IOException {
+		List<Path> files;
+		try (Stream<Path> list = Files.list(dir)) {
+			files = list.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+
+		String[] ids = new String[files.size()];
+		String[] docs = new String[files.size()];
+		for (int i = 0; i < docs.length; i++) {
+			ids[i] = files.get(i).getFileName().toString();
+			docs[i] = new String(Files.readAllBytes(files.get(i)), StandardCharsets.UTF_8);
+		}
+		return run(ids, docs, new String[docs.length]);
+	}
+
+	/**
+	 * Detects the language of each text@label line of a WiLI file.
+	 * Lines that do not split into exactly two parts at the '@' symbol are skipped, as the Parser does.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public List<DetectionResult> detectWiLI(Path file) throws IOException {
+		List<String> ids = new ArrayList<>();
+		List<String> docs = new ArrayList<>();
+		List<String> labels = new ArrayList<>();
+
+		try (BufferedReader br = Files.newBufferedReader(file)) {
+			String line = null;
+			int lineNumber = 0;
+
+			while ((line = br.readLine()) != null) {
+				lineNumber++;
+				String[] record = line.trim().split("@");
+				if (record.length != 2) {
+					continue;
+				}
+				ids.add(String.valueOf(lineNumber));
+				docs.add(record[0]);
+				labels.add(record[1]);
+			}
+		}
+		return run(ids.toArray(new String[0]), docs.toArray(new String[0]), labels.toArray(new String[0]));
+	}
+
+	/**
+	 * Splits the documents into slices, classifies each slice on the pool and waits for all of them.
+	 *
+	 * @param ids
+	 * @param docs
+	 * @param labels
+	 * @return
+	 */
+	private List<DetectionResult> run(String[] ids, String[] docs, String[] labels) {
+		DetectionResult[] results = new DetectionResult[docs.length];
+		int sliceSize = Math.max(1, (docs.length + workers * SLICES_PER_WORKER - 1) / (workers * SLICES_PER_WORKER));
+		List<Future<?>> slices = new ArrayList<>();
+
+		for (int from = 0; from < docs.length; from += sliceSize) {
+			int start = from;
+			int end = Math.min(from + sliceSize, docs.length);
+
+			slices.add(pool.submit(() -> {
+				// the query profile is built in ExecuteQuery, which only reads the database
+				ExecuteQuery exQuery = new ExecuteQuery(null, db);
+				exQuery.setCache(cache);
+				for (int i = start; i < end; i++) {
+					OutOfPlaceMetric match = exQuery.detect(docs[i]);
+					if (match == null) {
+						// no letters to detect
+						results[i] = new DetectionResult(ids[i], labels[i], null, 0);
+					} else {
+						results[i] = new DetectionResult(ids[i], labels[i], match.getLanguage(), match.getAbsoluteDistance());
+					}
+				}
+			}));
+		}
+
+		// wait for every slice
+		try {
+			for (Future<?> slice : slices) {
+				slice.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while detecting", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Detection failed", e.getCause());
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Shuts down the worker pool.
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+}
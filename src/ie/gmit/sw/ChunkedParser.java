@@ -0,0 +1,210 @@
+package ie.gmit.sw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ChunkedParser class implements Runnable
+ * Parses one byte range of the language dataset, so several ChunkedParsers can read the same file in parallel.
+ *
+ * split(Path file, int chunks)
+ * 		-Splits the file into byte ranges that start and end on line boundaries.
+ *
+ * run()
+ * 		-Memory maps the range and scans it for '\n' and '@' bytes instead of using readLine() and split("@").
+ * 		-Lines are split at '@' the same way as line.trim().split("@") in the Parser: '@' symbols at the end of the line are
+ * 		 ignored, and a line with exactly one '@' left is added to batches of QueryFiles which are put on the consumer queues in turn.
+ * 		-The last ChunkedParser to finish poisons every queue, one poison for each consumer.
+ *
+ * The dataset must be UTF-8. The '\n' and '@' bytes can never be part of a multi byte UTF-8 character,
+ * so they can be found without decoding the file.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class ChunkedParser implements Runnable {
+
+	// a single mapping can not be larger than 2GB, so ranges are kept below this
+	private static final long MAX_CHUNK = 1L << 30;
+
+	// variables
+	private Path file;
+	private long start;
+	private long end;
+	private List<BlockingQueue<List<QueryFile>>> queues;
+	private int batchSize;
+	private int next;
+	// number of ChunkedParsers of the same file that have not finished yet
+	private AtomicInteger running;
+
+	// constructor
+	public ChunkedParser(Path file, long start, long end, List<BlockingQueue<List<QueryFile>>> queues, int batchSize, int firstQueue, AtomicInteger running) {
+		super();
+		this.file = file;
+		this.start = start;
+		this.end = end;
+		this.queues = queues;
+		this.batchSize = batchSize;
+		this.next = firstQueue % queues.size();
+		this.running = running;
+	}
+
+	/**
+	 * Splits the file into about chunks byte ranges that start and end on line boundaries.
+	 * Returns the boundaries, range i is from boundaries[i] to boundaries[i + 1].
+	 * More ranges are used if a range would be too large to memory map.
+	 *
+	 * @param file
+	 * @param chunks
+	 * @return
+	 * @throws IOException
+	 */
+	public static long[] split(Path file, int chunks) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			int n = (int) Math.max(chunks, (size + MAX_CHUNK - 1) / MAX_CHUNK);
+			n = (int) Math.max(1, Math.min(n, size));
+
+			long[] boundaries = new long[n + 1];
+			boundaries[n] = size;
+			ByteBuffer buf = ByteBuffer.allocate(8192);
+
+			for (int i = 1; i < n; i++) {
+				// move the boundary to just after the next new line
+				long pos = Math.max(size * i / n, boundaries[i - 1]);
+				boundaries[i] = size;
+
+				search:
+				while (pos < size) {
+					buf.clear();
+					int read = channel.read(buf, pos);
+					if (read <= 0) {
+						break;
+					}
+					for (int j = 0; j < read; j++) {
+						if (buf.get(j) == '\n') {
+							boundaries[i] = pos + j + 1;
+							break search;
+						}
+					}
+					pos += read;
+				}
+			}
+			return boundaries;
+		}
+	}
+
+	/**
+	 * Memory maps the range and parses each line into the batches.
+	 * The last ChunkedParser to finish poisons every queue.
+	 */
+	@Override
+	public void run() {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			int limit = buf.limit();
+
+			// reused buffer for decoding each line
+			byte[] line = new byte[256];
+			List<QueryFile> batch = new ArrayList<>(batchSize);
+			int lineStart = 0;
+
+			while (lineStart < limit) {
+				// find the end of the line and the '@' symbols in it
+				int lineEnd = lineStart;
+				int at = -1;
+				int ats = 0;
+				while (lineEnd < limit) {
+					byte b = buf.get(lineEnd);
+					if (b == '\n') {
+						break;
+					}
+					if (b == '@') {
+						if (at < 0) {
+							at = lineEnd;
+						}
+						ats++;
+					}
+					lineEnd++;
+				}
+
+				// trim the line the same way String.trim() does
+				int from = lineStart;
+				int to = lineEnd;
+				while (from < to && (buf.get(from) & 0xFF) <= ' ') {
+					from++;
+				}
+				while (to > from && (buf.get(to - 1) & 0xFF) <= ' ') {
+					to--;
+				}
+
+				// split("@") drops the empty fields after '@' symbols at the end of the line
+				int recordEnd = to;
+				while (recordEnd > from && buf.get(recordEnd - 1) == '@') {
+					recordEnd--;
+					ats--;
+				}
+
+				// a record is text@language, skip anything else
+				if (ats == 1) {
+					int length = recordEnd - from;
+					if (line.length < length) {
+						line = new byte[Math.max(length, line.length * 2)];
+					}
+					buf.get(from, line, 0, length);
+
+					String text = new String(line, 0, at - from, StandardCharsets.UTF_8);
+					String language = new String(line, at - from + 1, recordEnd - at - 1, StandardCharsets.UTF_8);
+					batch.add(new QueryFile(text, language));
+
+					// put a full batch onto the next Blocking Queue
+					if (batch.size() == batchSize) {
+						put(batch);
+						batch = new ArrayList<>(batchSize);
+					}
+				}
+
+				// skip the new line
+				lineStart = lineEnd + 1;
+			}
+
+			// put the last part batch
+			if (!batch.isEmpty()) {
+				put(batch);
+			}
+		} catch (Exception e) {
+			Metrics.get().error();
+			e.printStackTrace();
+		} finally {
+			// the last parser to finish poisons every Blocking Queue, one for each consumer
+			if (running.decrementAndGet() == 0) {
+				try {
+					for (BlockingQueue<List<QueryFile>> queue : queues) {
+						queue.put(Parser.POISON);
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	// puts the batch on the next queue in turn, counting its lines and the time spent waiting for room
+	private void put(List<QueryFile> batch) throws InterruptedException {
+		long start = System.nanoTime();
+		queues.get(next).put(batch);
+		Metrics.get().addPutBlocked(System.nanoTime() - start);
+		Metrics.get().addLines(batch.size());
+		next = (next + 1) % queues.size();
+	}
+}
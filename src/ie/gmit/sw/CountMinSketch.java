@@ -0,0 +1,98 @@
+package ie.gmit.sw;
+
+/**
+ * CountMinSketch class
+ * Estimates the frequency of every kmer in a fixed number of int counters, however many distinct kmers are counted.
+ * Each kmer is hashed to one counter in each of depth rows, and its estimate is the smallest of those counters.
+ * An estimate is never below the true frequency.
+ *
+ * add(long kmer, int n)
+ * 		-Uses conservative update, only the counters that are below the new estimate are raised,
+ * 		 which keeps the over-estimates much smaller than adding n to every row.
+ *
+ * This class is not thread safe.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class CountMinSketch {
+
+	// one seed per row, so each row spreads the kmers differently
+	private static final long[] SEEDS = {
+		0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+		0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x94D049BB133111EBL, 0xBF58476D1CE4E5B9L
+	};
+
+	// variables
+	private final int[][] counters;
+	private final int mask;
+
+	// constructor - width is rounded up to a power of two
+	public CountMinSketch(int depth, int width) {
+		super();
+		if (depth < 1 || depth > SEEDS.length) {
+			throw new IllegalArgumentException("depth must be 1 to " + SEEDS.length);
+		}
+		int size = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+		this.counters = new int[depth][size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Adds n to the frequency of the kmer and returns its new estimate.
+	 *
+	 * @param kmer
+	 * @param n
+	 * @return
+	 */
+	public int add(long kmer, int n) {
+		int estimate = estimate(kmer) + n;
+		for (int row = 0; row < counters.length; row++) {
+			int i = index(kmer, row);
+			if (counters[row][i] < estimate) {
+				counters[row][i] = estimate;
+			}
+		}
+		return estimate;
+	}
+
+	/**
+	 * Returns the estimated frequency of the kmer.
+	 *
+	 * @param kmer
+	 * @return
+	 */
+	public int estimate(long kmer) {
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < counters.length; row++) {
+			min = Math.min(min, counters[row][index(kmer, row)]);
+		}
+		return min;
+	}
+
+	// accessor methods
+	public int getWidth() {
+		return mask + 1;
+	}
+
+	public int getDepth() {
+		return counters.length;
+	}
+
+	/**
+	 * Returns the counters of one row, not a copy, so a ProfileFile can write and read them in bulk.
+	 *
+	 * @param row
+	 * @return
+	 */
+	int[] getRow(int row) {
+		return counters[row];
+	}
+
+	// counter of the kmer in the row
+	private int index(long kmer, int row) {
+		long h = (kmer ^ SEEDS[row]) * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+}
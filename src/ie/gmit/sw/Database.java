@@ -5,32 +5,67 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Database class
+ * Every Database has a ProfileConfig (kmer sizes, profile size and hash width) that training and queries both use.
  * 
  * add(CharSequence s, Language lang)
- * 		-converts the kmer to a HashCode and Adds the HashCode and language to the Map
+ * 		-converts the kmer to a hash of the configured width and increments its frequency in the frequency table for the language
+ * 
+ * add(long kmer, Language lang)
+ * 		-increments the frequency of an already hashed kmer
+ * 
+ * merge(ProfileAccumulator local)
+ * 		-Folds the private counts of one ExecuteQuery worker into the database.
  * 
  * getLanguageEntries(Language lang)
  * 		-Check to see if the database contains the Language.
- * 		-Return the Map, if the database contains the language.
- * 		-If the database does not contain the language create a new Map and add it to the database.
+ * 		-Return the frequency table, if the database contains the language.
+ * 		-If the database does not contain the language create a new frequency table and add it to the database.
+ * 
+ * resize() 
+ * 		-Replaces the frequency tables with the top profileSize entries of each language as a RankedProfile, ranking the languages in parallel.
+ * 
+ * Bounded memory training
+ * 		-With setHeavyHitters(capacity) each language keeps at most capacity kmers in a HeavyHitters
+ * 		 (space-saving over a count-min sketch) instead of a KmerTable of every kmer it has seen,
+ * 		 so training memory is fixed whatever the size of the corpus. A capacity of about ten times the profile size
+ * 		 gives almost the same profiles as exact counting.
  * 
- * resize(int max) 
- * 		-Adds top 300 entries into the Map.
+ * Incremental training
+ * 		-addSample(CharSequence text, Language lang) counts new labelled text after resize(), or after loading a ProfileFile.
+ * 		-rerank() ranks only the languages that got new samples since the last resize() or rerank().
+ * 		-With setKeepCounts(true) resize() keeps the full frequency tables, so a re-ranked profile is exact.
+ * 		 Otherwise a language that gets a new sample starts again from the frequencies of its ranked profile.
+ * 		-With setSketchWidth(width) resize() also folds the full frequency table of each language into a CountMinSketch
+ * 		 that is saved with the profiles (see ProfileFile). A sampled kmer that is not in the profile then starts from
+ * 		 its sketch estimate instead of 0, so a kmer just outside the profile can still be promoted.
+ * 		 Without a sketch or the full tables, updates only know the profile frequencies and can miss such kmers.
  * 
  * getTop(int max, Language lang)
- * 		-sorts out the list and Keeps the top 300 entries 
- * 		-The first language entry in will be the highest ranking one
+ * 		-Keeps the top max entries with a bounded TopK heap instead of sorting every kmer
+ * 		-The first kmer in will be the highest ranking one
+ * 
+ * 	getBestMatch(RankedProfile query) 
+ * 		-Scores a ranked query, for example from a QueryProfiler or the StreamingDetector, against every language at once
+ * 		 with the InvertedIndex and returns the OutOfPlaceMetric of the language with the smallest out of place distance.
+ * 
+ * 	getMatch(RankedProfile query, Language lang) 
+ * 		-Scores the query against one language only, for example the language a DetectionCache remembered for a near duplicate.
+ * 
+ * 	getTopMatches(RankedProfile query, int n) 
+ * 		-Returns the OutOfPlaceMetrics of the n closest languages, closest first.
+ * 
+ * 	getRankedMatches(RankedProfile query, int n, BitSet queryScripts) 
+ * 		-Returns the n closest languages as LanguageMatches with a normalized score and confidence, closest first.
  * 
- * 	getLanguage(Map<Integer, Kmer> query) 
- * 		-Iterate over each language entry and add a new OutOfPlaceMetric,
- * 		-pass a language and call getOutOfPlaceDistance() method passing in the query and give it the Map for the language 
- * 		-and adds to a ordered TreeSet of the query file.
+ * 	Candidate pruning cascade
+ * 		-The Unicode scripts of the training text of each language are counted (see ScriptFilter).
+ * 		-A query that passes its own scripts is only scored against the languages written in one of those scripts.
+ * 		-A short list of candidates is scored directly against their profiles, a long one through the InvertedIndex.
  * 
- * 	getOutOfPlaceDistance(Map<Integer, Kmer> query, Map<Integer, Kmer> subject)
- * 		-Compares the query Map with the subject Map.
- * 		-Check to see if the language entry is in the Map.
- * 		-If it is not in the Map, set the distance to the number of elements in the Map plus 1.
- * 		-If it is in the Map, set the distance to the subject rank minus the query rank.
+ * 	getIndex()
+ * 		-Freezes the ranked profiles into ProfileColumns (one sorted kmer array and a parallel rank array for every language)
+ * 		 and builds the InvertedIndex over them the first time it is needed.
+ * 		-Candidates that are scored directly are merge joined with the sorted query instead of looked up in a hash table per profile.
  * 
  * @author G00362383 - Michael Mulholland
  * @version 1.0
@@ -39,183 +74,699 @@ import java.util.concurrent.ConcurrentHashMap;
 public class Database {
 
 	// 235 languages - map that maps languages to there n-grams and frequency of occurance
-	private Map<Language, Map<Integer, Kmer>> db = new ConcurrentHashMap<>();
+	private Map<Language, KmerCounter> db = new ConcurrentHashMap<>();
+
+	// the ranked top kmers of each language, filled in by resize()
+	private Map<Language, RankedProfile> profiles = new ConcurrentHashMap<>();
+
+	// Unicode script counts of the training text of each language, only used until resize()
+	private Map<Language, int[]> scriptCounts = new ConcurrentHashMap<>();
+
+	// the scripts each language is written in, filled in by resize()
+	private Map<Language, BitSet> scripts = new ConcurrentHashMap<>();
+
+	// at most this many candidates are scored directly against their profiles instead of through the index
+	private static final int DIRECT_CANDIDATES = 16;
+
+	// the confidence of a language is its share of the scores of this many closest languages, however many are asked for
+	public static final int CONFIDENCE_LANGUAGES = 5;
+
+	// kmer to (language, rank) postings of the ranked profiles and the ProfileColumns it was built from, built on first use
+	private volatile InvertedIndex index = null;
+
+	// changes every time the profiles change, so cached detections can tell they are out of date
+	private volatile int generation = 0;
+
+	// kmers kept per language in bounded memory training, 0 counts every kmer exactly
+	private volatile int heavyHitters = 0;
+
+	// keep the frequency tables after resize() so later samples can be ranked exactly
+	private volatile boolean keepCounts = false;
+
+	// rows of each CountMinSketch
+	public static final int SKETCH_DEPTH = 4;
+
+	// counters per row of the CountMinSketch of each language, 0 keeps no sketches
+	private volatile int sketchWidth = 0;
+
+	// a CountMinSketch of every kmer counted for each language, filled in by resize() when sketchWidth is set
+	private Map<Language, CountMinSketch> sketches = new ConcurrentHashMap<>();
+
+	// languages with samples added since the last resize() or rerank()
+	private Set<Language> changed = ConcurrentHashMap.newKeySet();
+
+	// kmer sizes, profile size and hash width, training and queries have to use the same settings
+	private final ProfileConfig config;
+
+	// constructors
+	public Database() {
+		this(ProfileConfig.DEFAULT);
+	}
+
+	public Database(ProfileConfig config) {
+		super();
+		this.config = config;
+	}
+
+	// accessor methods
+	public ProfileConfig getConfig() {
+		return config;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	public NGramExtractor.HashWidth getHashWidth() {
+		return config.getHashWidth();
+	}
+
+	public int getHeavyHitters() {
+		return heavyHitters;
+	}
+
+	/**
+	 * Sets the number of kmers kept per language while training, 0 (the default) counts every kmer exactly.
+	 * Has to be set before training starts.
+	 * 
+	 * @param capacity
+	 */
+	public void setHeavyHitters(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative");
+		}
+		this.heavyHitters = capacity;
+	}
+
+	public int getSketchWidth() {
+		return sketchWidth;
+	}
+
+	/**
+	 * Sets the counters per row of the CountMinSketch kept of each language by resize(), 0 (the default) keeps no sketches.
+	 * Has to be set before resize() is called.
+	 * 
+	 * @param width
+	 */
+	public void setSketchWidth(int width) {
+		if (width < 0) {
+			throw new IllegalArgumentException("width must not be negative");
+		}
+		this.sketchWidth = width;
+	}
+
+	public boolean isKeepCounts() {
+		return keepCounts;
+	}
+
+	public void setKeepCounts(boolean keepCounts) {
+		this.keepCounts = keepCounts;
+	}
 
 	/**
-	 * Adds a kmer and language to the Map. 
-	 * Convert the string to its HashCode.  
-	 * Get the language map for a particular language
-	 * Frequency is set to 1. If the Map already has the kmer, inceament the frequency by one
-	 * otherwise re-insert into the Map and overwrite the existing kmer with the new LanguageEntry
-	 * The HashCode and language is stored in the Map
+	 * Returns an extractor for the kmers of the ProfileConfig of this database.
+	 * 
+	 * @return
+	 */
+	public NGramExtractor newExtractor() {
+		return config.newExtractor();
+	}
+
+	/**
+	 * Adds a kmer and language to the database. 
+	 * Convert the string to its hash.  
 	 *  
 	 * @param s
 	 * @param lang
 	 */
 	public void add(CharSequence s, Language lang) {
-		// convert the string to its HashCode
-		int kmer = s.hashCode();
+		// convert the string to its hash, using the same width as the NGramExtractor
+		add(NGramExtractor.hash(s, config.getHashWidth()), lang);
+	}
 
-		// getLanguageEntries(lang) - get the language map for a particular language
-		Map<Integer, Kmer> langDb = getLanguageEntries(lang);
+	/**
+	 * Adds a hashed kmer and language to the database. 
+	 * Get the frequency table for a particular language
+	 * Increment the frequency of the hash in place. 
+	 * The table is shared by every ExecuteQuery thread so the increment is done while holding its lock.
+	 *  
+	 * @param kmer
+	 * @param lang
+	 */
+	public void add(long kmer, Language lang) {
+		// getLanguageEntries(lang) - get the frequency table for a particular language
+		KmerCounter langDb = getLanguageEntries(lang);
 
-		// set frequency to 1
-		int frequency = 1;
+		// add 1 to the frequency of the kmer, inserting it if it is new
+		synchronized (langDb) {
+			langDb.increment(kmer);
+		}
+	}
 
-		// If the Map already has the kmer, inceament the frequency by one
-		if (langDb.containsKey(kmer)) {
-			frequency += langDb.get(kmer).getFrequency();
+	/**
+	 * Counts the Unicode scripts of a line of training text for the language.
+	 * 
+	 * @param text
+	 * @param lang
+	 */
+	public void addScripts(CharSequence text, Language lang) {
+		int[] counts = scriptCounts.computeIfAbsent(lang, l -> new int[ScriptFilter.SCRIPTS]);
+		synchronized (counts) {
+			ScriptFilter.count(text, counts);
 		}
+	}
+
+	/**
+	 * Folds the private counts of one ExecuteQuery worker into the database.
+	 * Called once per worker after it has taken the poison, so the lock on each language table
+	 * is only taken once per worker instead of once per kmer.
+	 * 
+	 * @param local
+	 */
+	public void merge(ProfileAccumulator local) {
+		// for each of the 235 languages
+		for (Language lang : Language.values()) {
+			KmerTable counts = local.getTable(lang);
+
+			// skip the languages the worker never saw
+			if (counts == null) {
+				continue;
+			}
+
+			// add the worker counts to the shared table
+			KmerCounter langDb = getLanguageEntries(lang);
+			synchronized (langDb) {
+				langDb.addAll(counts);
+			}
 
-		// overwrite the existing kmer with the new LanguageEntry
-		langDb.put(kmer, new Kmer(kmer, frequency));
+			// add the worker script counts
+			int[] localScripts = local.getScripts(lang);
+			if (localScripts != null) {
+				int[] shared = scriptCounts.computeIfAbsent(lang, l -> new int[ScriptFilter.SCRIPTS]);
+				synchronized (shared) {
+					for (int i = 0; i < shared.length; i++) {
+						shared[i] += localScripts[i];
+					}
+				}
+			}
+		}
 	}
 
 	/**
-	 * Creates a new Map.
 	 * Check to see if the database contains the Language.
-	 * Return the Map, if the database contains the language.
-	 * If the database does not contain the language create a new Map and add it to the database.
+	 * Return the frequency table, if the database contains the language.
+	 * If the database does not contain the language create a new frequency table and add it to the database.
 	 *  
 	 * @param lang
 	 * @return
 	 */
-	private Map<Integer, Kmer> getLanguageEntries(Language lang){
-		// set Map to null
-		Map<Integer, Kmer> langDb = null; 
+	private KmerCounter getLanguageEntries(Language lang){
+		// computeIfAbsent is atomic, so two threads can not both create a table for the same language
+		return db.computeIfAbsent(lang, l -> newCounter());
+	}
 
-		// if statement - checks to see if the database contains the Language
-		if (db.containsKey(lang)) {
-			// if the database contains the language, return the Map
-			langDb = db.get(lang);
-		}else {
-			// if the database does not contains the language
-			// create a new Map and add it to the database
-			langDb = new ConcurrentHashMap<Integer, Kmer>();
-			db.put(lang, langDb);
-		}
-		return langDb;
+	// an exact KmerTable, or a bounded HeavyHitters in bounded memory training
+	private KmerCounter newCounter() {
+		int capacity = heavyHitters;
+		return capacity > 0 ? new HeavyHitters(capacity) : new KmerTable();
 	}
 
 	/**
-	 * Adds top 300 entries into the Map.
+	 * Keeps the top profileSize entries of each language, the profile size of the ProfileConfig.
+	 */
+	public void resize() {
+		resize(config.getProfileSize());
+	}
+
+	/**
+	 * Keeps the top max entries of each language.
+	 * The languages are ranked in parallel, each one only reads its own frequency table.
+	 * The frequency tables are replaced by compact RankedProfiles and then discarded, unless keepCounts is set.
 	 * 
 	 * @param max
 	 */
 	public void resize(int max) {
+		long start = System.nanoTime();
+
 		// call keySet() which returns all 235 languages
 		Set<Language> keys = db.keySet();
 
-		// for each language entry
-		for (Language lang : keys) {
-			// mapping of the int to their language
-			Map<Integer, Kmer> top = getTop(max, lang);
+		// rank each language on the common fork join pool, and sketch its full counts if sketches are kept
+		int width = sketchWidth;
+		keys.parallelStream().forEach(lang -> {
+			profiles.put(lang, getTop(max, lang));
+			if (width > 0) {
+				CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, width);
+				db.get(lang).forEach(sketch::add);
+				sketches.put(lang, sketch);
+			}
+		});
+
+		// keep the main scripts of each language
+		for (Map.Entry<Language, int[]> e : scriptCounts.entrySet()) {
+			scripts.put(e.getKey(), ScriptFilter.scripts(e.getValue(), ScriptFilter.LANGUAGE_SHARE));
+		}
 
-			// re-insert into the Map
-			db.put(lang, top);
+		// the full frequency tables are no longer needed, unless they are kept for incremental training
+		if (!keepCounts) {
+			db.clear();
+			scriptCounts.clear();
 		}
+		changed.clear();
+
+		// the profiles changed so the index has to be rebuilt
+		index = null;
+		generation++;
+
+		Metrics.get().resized(System.nanoTime() - start);
 	}
 
 	/**
-	 * getTop() - sorts out the list and Keeps the top 300 entries 
-	 * The first language entry in will be the highest ranking one
+	 * Counts a new labelled sample of a language that can be added after the profiles have been ranked.
+	 * If the frequency table of the language was discarded it is first filled from its ranked profile.
+	 * The profile is not changed until rerank() is called.
+	 * 
+	 * @param text
+	 * @param lang
+	 */
+	public void addSample(CharSequence text, Language lang) {
+		KmerCounter langDb = db.computeIfAbsent(lang, this::fromProfile);
+		NGramExtractor extractor = newExtractor();
+		CountMinSketch sketch = sketches.get(lang);
+
+		synchronized (langDb) {
+			if (sketch == null) {
+				extractor.extract(text, langDb::increment);
+			} else {
+				// without the full table, a kmer that is new to the table starts from the sketch estimate of its earlier count.
+				// A kmer outside the profile was at most as frequent as the last kmer of the profile, which caps the over-estimate
+				boolean seeded = !keepCounts && langDb instanceof KmerTable;
+				RankedProfile profile = profiles.get(lang);
+				int cap = profile == null || profile.size() == 0 ? Integer.MAX_VALUE : profile.getFrequency(profile.size());
+				extractor.extract(text, kmer -> {
+					int history = Math.min(cap, sketch.estimate(kmer));
+					sketch.add(kmer, 1);
+					if (seeded && history > 0 && !((KmerTable) langDb).contains(kmer)) {
+						langDb.add(kmer, history);
+					}
+					langDb.increment(kmer);
+				});
+			}
+		}
+		addScripts(text, lang);
+		changed.add(lang);
+		Metrics.get().addNGrams(lang, extractor.count(text.length()));
+	}
+
+	/**
+	 * Ranks the languages that got new samples since the last resize() or rerank() again, leaving the others as they are.
+	 * Returns the languages that were ranked.
+	 * 
+	 * @return
+	 */
+	public Set<Language> rerank() {
+		long start = System.nanoTime();
+
+		Set<Language> langs = new TreeSet<>(changed);
+		changed.removeAll(langs);
+
+		// rank each changed language on the common fork join pool
+		langs.parallelStream().forEach(lang -> profiles.put(lang, getTop(config.getProfileSize(), lang)));
+
+		for (Language lang : langs) {
+			int[] counts = keepCounts ? scriptCounts.get(lang) : scriptCounts.remove(lang);
+			BitSet langScripts = ScriptFilter.scripts(counts, ScriptFilter.LANGUAGE_SHARE);
+
+			// without the full counts only the new samples were counted, so keep the scripts the language already had
+			BitSet old = scripts.get(lang);
+			if (!keepCounts && old != null) {
+				langScripts.or(old);
+			}
+			scripts.put(lang, langScripts);
+
+			if (!keepCounts) {
+				db.remove(lang);
+			}
+		}
+
+		// the profiles changed so the index has to be rebuilt
+		index = null;
+		generation++;
+
+		Metrics.get().resized(System.nanoTime() - start);
+		return langs;
+	}
+
+	// a frequency table filled from the ranked profile of the language, or an empty one for a new language
+	private KmerCounter fromProfile(Language lang) {
+		// only the profile and the new samples are counted, so the table stays small and can be exact
+		KmerTable table = new KmerTable();
+		RankedProfile profile = profiles.get(lang);
+		if (profile != null) {
+			for (int rank = 1; rank <= profile.size(); rank++) {
+				table.add(profile.getKmer(rank), profile.getFrequency(rank));
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * getTop() - Keeps the top max entries of the language using a bounded heap, without sorting the whole table.
+	 * The first kmer in will be the highest ranking one
 	 *
 	 * @param max
 	 * @param lang
 	 * @return
 	 */
-	public Map<Integer, Kmer> getTop(int max, Language lang) {
-		// ConcurrentHashMap
-		Map<Integer, Kmer> temp = new ConcurrentHashMap<>();
+	public RankedProfile getTop(int max, Language lang) {
+		// offer every kmer of the frequency table to a heap of size max
+		TopK top = new TopK(max);
+		db.get(lang).forEach(top);
 
-		// temp List - gives us the set of frequencies for the language
-		List<Kmer> list = new ArrayList<>(db.get(lang).values());
+		// return the ranked profile
+		return top.toProfile();
+	}
 
-		// sort the list
-		Collections.sort(list);
+	/**
+	 * Returns the languages that have a ranked profile.
+	 * 
+	 * @return
+	 */
+	public Set<Language> getLanguages() {
+		return Collections.unmodifiableSet(profiles.keySet());
+	}
 
-		// set rank to 1
-		int rank = 1;
+	/**
+	 * Returns the ranked profile of the language, or null if resize() has not been called
+	 * or the language was not in the dataset.
+	 * 
+	 * @param lang
+	 * @return
+	 */
+	public RankedProfile getProfile(Language lang) {
+		return profiles.get(lang);
+	}
 
-		// for each language entry
-		for (Kmer le : list) {
-			// the first language entry in will be the highest ranking one
-			// set rank to 1
-			le.setRank(rank);
+	/**
+	 * Returns the scripts the language is written in, or null if they are not known.
+	 * 
+	 * @param lang
+	 * @return
+	 */
+	public BitSet getScripts(Language lang) {
+		return scripts.get(lang);
+	}
 
-			// put into the temp Map
-			temp.put(le.getKmer(), le);		
+	/**
+	 * Returns the CountMinSketch of the counts of the language, or null if no sketch is kept.
+	 * 
+	 * @param lang
+	 * @return
+	 */
+	public CountMinSketch getSketch(Language lang) {
+		return sketches.get(lang);
+	}
 
-			// once we hit the number that is specified by the user, break
-			if (rank == max) break;
-			// rank plus 1
-			rank++;
-		}
+	/**
+	 * Sets the sketch of a language, for example loaded from a ProfileFile.
+	 * 
+	 * @param lang
+	 * @param sketch
+	 */
+	void putSketch(Language lang, CountMinSketch sketch) {
+		sketches.put(lang, sketch);
+	}
 
-		// return temp
-		return temp;
+	/**
+	 * Sets the scripts of a language, for example loaded from a ProfileFile.
+	 * 
+	 * @param lang
+	 * @param langScripts
+	 */
+	void putScripts(Language lang, BitSet langScripts) {
+		scripts.put(lang, langScripts);
 	}
 
 	/**
-	 * Iterate over each language entry and add a new OutOfPlaceMetric, pass a language and call getOutOfPlaceDistance() method 
-	 * passing in the query and give it the Map for the language and adds to a ordered TreeSet of the query file.
+	 * Adds a ranked profile that was built elsewhere, for example loaded from a ProfileFile.
+	 * 
+	 * @param lang
+	 * @param profile
+	 */
+	void putProfile(Language lang, RankedProfile profile) {
+		profiles.put(lang, profile);
+		index = null;
+		generation++;
+	}
+
+	/**
+	 * Scores a query profile against every language and returns the OutOfPlaceMetric of the closest one.
+	 * The kmer with rank 1 in the query profile has query rank 1.
+	 * Throws an IllegalStateException if the database has no ranked profiles.
 	 * 
 	 * @param query
 	 * @return
 	 */
-	public Language getLanguage(Map<Integer, Kmer> query) {
-		// TreeSet that is ordered
-		TreeSet<OutOfPlaceMetric> oopm = new TreeSet<>();
+	public OutOfPlaceMetric getBestMatch(RankedProfile query) {
+		return getTopMatches(query, 1)[0];
+	}
 
-		// call keySet() which returns all 235 languages
-		Set<Language> langs = db.keySet();
+	/**
+	 * Scores a query profile against the languages written in one of the query scripts
+	 * and returns the OutOfPlaceMetric of the closest one.
+	 * 
+	 * @param query
+	 * @param queryScripts
+	 * @return
+	 */
+	public OutOfPlaceMetric getBestMatch(RankedProfile query, BitSet queryScripts) {
+		return getTopMatches(query, 1, queryScripts)[0];
+	}
 
-		// for each language entry
-		for (Language lang : langs) {
-			// add a new OutOfPlaceMetric, pass a language and call getOutOfPlaceDistance() method 
-			//passing in the query and give it the Map for the language
-			//then add into the sorted TreeSet
-			oopm.add(new OutOfPlaceMetric(lang, getOutOfPlaceDistance(query, db.get(lang))));
+	/**
+	 * Scores a query profile against one language only and returns its OutOfPlaceMetric,
+	 * or null if the language has no ranked profile.
+	 * 
+	 * @param query
+	 * @param lang
+	 * @return
+	 */
+	public OutOfPlaceMetric getMatch(RankedProfile query, Language lang) {
+		InvertedIndex idx = getIndex();
+		for (int l = 0; l < idx.size(); l++) {
+			if (idx.getLanguage(l) == lang) {
+				int size = query.size();
+				long[] kmers = new long[size];
+				int[] ranks = new int[size];
+				for (int rank = 1; rank <= size; rank++) {
+					kmers[rank - 1] = query.getKmer(rank);
+					ranks[rank - 1] = rank;
+				}
+				ProfileColumns.sort(kmers, ranks, size);
+				return new OutOfPlaceMetric(lang, idx.getColumns().distance(l, kmers, ranks, size));
+			}
 		}
-		return oopm.first().getLanguage();
+		return null;
 	}
 
 	/**
-	 * Compares the query Map with the subject Map.
-	 * Get language entry from the database.
-	 * Check to see if the language entry is in the Map.
-	 * If it is not in the Map, set the distance to the number of elements in the Map plus 1.
-	 * If it is in the Map, set the distance to the subject rank minus the query rank.
-	 * Return the distance.
+	 * Scores a query profile against every language and returns the OutOfPlaceMetrics of the n closest languages,
+	 * closest first. Used to see how far ahead the best language is of the runner-up.
 	 * 
 	 * @param query
-	 * @param subject
+	 * @param n
 	 * @return
 	 */
-	private int getOutOfPlaceDistance(Map<Integer, Kmer> query, Map<Integer, Kmer> subject) {
-		// local variable
-		int distance = 0;
+	public OutOfPlaceMetric[] getTopMatches(RankedProfile query, int n) {
+		return getTopMatches(query, n, null);
+	}
 
-		// create a new TreeSet based on the query values
-		Set<Kmer> les = new TreeSet<>(query.values());	
+	/**
+	 * The same as getTopMatches(query, n) but only scores the languages written in one of the query scripts.
+	 * 
+	 * @param query
+	 * @param n
+	 * @param queryScripts
+	 * @return
+	 */
+	public OutOfPlaceMetric[] getTopMatches(RankedProfile query, int n, BitSet queryScripts) {
+		int size = query.size();
+		long[] kmers = new long[size];
+		int[] ranks = new int[size];
+		for (int rank = 1; rank <= size; rank++) {
+			kmers[rank - 1] = query.getKmer(rank);
+			ranks[rank - 1] = rank;
+		}
+		return getTopMatches(kmers, ranks, size, n, queryScripts);
+	}
 
-		// for each language entry
-		for (Kmer q : les) {
-			// get language entry from the database
-			Kmer s = subject.get(q.getKmer());
+	/**
+	 * Returns the n closest languages as LanguageMatches, closest first.
+	 * At least CONFIDENCE_LANGUAGES languages are scored so the confidence does not depend on n.
+	 * 
+	 * @param query
+	 * @param n
+	 * @param queryScripts
+	 * @return
+	 */
+	public LanguageMatch[] getRankedMatches(RankedProfile query, int n, BitSet queryScripts) {
+		return rank(getTopMatches(query, Math.max(n, CONFIDENCE_LANGUAGES), queryScripts), query.size(), n);
+	}
 
-			// check to see if the language entry is there
-			if (s == null) {
-				// set the distance 
-				// for example: if there is 300 elements, then the distance will be set to 301
-				distance += subject.size() + 1;
-			}else {
-				// set the distance to the subject rank minus the query rank
-				distance += s.getRank() - q.getRank();
+	/**
+	 * Turns the closest languages to a query of querySize ranked kmers into the first n LanguageMatches.
+	 * The score of a language is 1 minus its distance over the largest distance the query could have from it,
+	 * and the confidence is its share of the scores of the first CONFIDENCE_LANGUAGES closest languages (or all of them if
+	 * there are fewer), so the same query gets the same confidence whatever n is. closest should hold at least
+	 * CONFIDENCE_LANGUAGES languages, or every candidate language of the query.
+	 * 
+	 * @param closest
+	 * @param querySize
+	 * @param n
+	 * @return
+	 */
+	public LanguageMatch[] rank(OutOfPlaceMetric[] closest, int querySize, int n) {
+		double[] scores = new double[closest.length];
+		double total = 0;
+		int shared = Math.min(CONFIDENCE_LANGUAGES, closest.length);
+		for (int i = 0; i < closest.length; i++) {
+			// every query kmer missing from the profile is the furthest a language can be
+			long furthest = (long) querySize * (profiles.get(closest[i].getLanguage()).size() + 1);
+			scores[i] = furthest == 0 ? 0 : Math.max(0, 1 - (double) closest[i].getAbsoluteDistance() / furthest);
+			if (i < shared) {
+				total += scores[i];
 			}
 		}
 
-		// return the distance
-		return distance;
+		LanguageMatch[] matches = new LanguageMatch[Math.min(n, closest.length)];
+		for (int i = 0; i < matches.length; i++) {
+			// nothing in common with any language - every language is as likely
+			double confidence = total == 0 ? 1.0 / shared : scores[i] / total;
+			matches[i] = new LanguageMatch(closest[i].getLanguage(), closest[i].getAbsoluteDistance(), scores[i], confidence);
+		}
+		return matches;
+	}
+
+	// scores the query against the candidate languages and keeps the top closest ones
+	private OutOfPlaceMetric[] getTopMatches(long[] kmers, int[] ranks, int n, int top, BitSet queryScripts) {
+		InvertedIndex idx = getIndex();
+		if (idx.size() == 0) {
+			throw new IllegalStateException("The database has no language profiles, train it or load a profile file first");
+		}
+
+		// first stage - the languages written in one of the query scripts
+		int[] candidates = getCandidates(idx, queryScripts);
+
+		// second stage - one distance per candidate language
+		int[] distances = new int[idx.size()];
+		if (candidates == null || candidates.length > DIRECT_CANDIDATES) {
+			// score every language at once through the index
+			idx.distances(kmers, ranks, n, distances);
+		}
+		if (candidates != null) {
+			// a short list is cheaper to score one profile at a time
+			if (candidates.length <= DIRECT_CANDIDATES) {
+				// the merge join needs the query in kmer order, the arrays belong to this call so they are sorted in place
+				ProfileColumns.sort(kmers, ranks, n);
+				ProfileColumns columns = idx.getColumns();
+				for (int l : candidates) {
+					distances[l] = columns.distance(l, kmers, ranks, n);
+				}
+			}
+
+			// everything else is out of the running
+			boolean[] keep = new boolean[distances.length];
+			for (int l : candidates) {
+				keep[l] = true;
+			}
+			for (int l = 0; l < distances.length; l++) {
+				if (!keep[l]) {
+					distances[l] = Integer.MAX_VALUE;
+				}
+			}
+		}
+
+		// insertion into a small sorted array of language positions,
+		// ordered by absolute distance the same as OutOfPlaceMetric
+		int count = Math.min(top, distances.length);
+		int[] closest = new int[count];
+		int kept = 0;
+
+		for (int l = 0; l < distances.length; l++) {
+			if (distances[l] == Integer.MAX_VALUE) {
+				continue;
+			}
+			int d = Math.abs(distances[l]);
+			if (kept == count && d >= Math.abs(distances[closest[kept - 1]])) {
+				continue;
+			}
+
+			int i = kept < count ? kept++ : kept - 1;
+			while (i > 0 && Math.abs(distances[closest[i - 1]]) > d) {
+				closest[i] = closest[i - 1];
+				i--;
+			}
+			closest[i] = l;
+		}
+
+		OutOfPlaceMetric[] matches = new OutOfPlaceMetric[kept];
+		for (int i = 0; i < kept; i++) {
+			matches[i] = new OutOfPlaceMetric(idx.getLanguage(closest[i]), distances[closest[i]]);
+		}
+		return matches;
+	}
+
+	/**
+	 * Returns the index positions of the languages written in one of the query scripts,
+	 * or null if every language has to be scored.
+	 * 
+	 * @param idx
+	 * @param queryScripts
+	 * @return
+	 */
+	private int[] getCandidates(InvertedIndex idx, BitSet queryScripts) {
+		if (queryScripts == null || queryScripts.isEmpty() || scripts.isEmpty()) {
+			return null;
+		}
+
+		int[] candidates = new int[idx.size()];
+		int n = 0;
+		for (int l = 0; l < idx.size(); l++) {
+			BitSet langScripts = scripts.get(idx.getLanguage(l));
+			// a language with unknown scripts is always a candidate
+			if (langScripts == null || langScripts.intersects(queryScripts)) {
+				candidates[n++] = l;
+			}
+		}
+
+		// no language is written in the query scripts, so fall back to all of them
+		return n == 0 ? null : Arrays.copyOf(candidates, n);
+	}
+
+	/**
+	 * Returns the InvertedIndex of the ranked profiles, freezing the profiles into ProfileColumns
+	 * and building the index over them the first time it is needed.
+	 * 
+	 * @return
+	 */
+	public InvertedIndex getIndex() {
+		InvertedIndex idx = index;
+		if (idx == null) {
+			synchronized (this) {
+				idx = index;
+				if (idx == null) {
+					// the languages in enum order so the index is the same on every run
+					Language[] langs = new TreeSet<>(profiles.keySet()).toArray(new Language[0]);
+					RankedProfile[] ranked = new RankedProfile[langs.length];
+					for (int l = 0; l < langs.length; l++) {
+						ranked[l] = profiles.get(langs[l]);
+					}
+
+					idx = new InvertedIndex(new ProfileColumns(langs, ranked));
+					index = idx;
+				}
+			}
+		}
+		return idx;
 	}
-}
\ No newline at end of file
+}
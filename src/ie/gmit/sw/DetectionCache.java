@@ -0,0 +1,185 @@
+package ie.gmit.sw;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DetectionCache class
+ * A bounded least recently used cache of detections, for traffic where the same short texts are detected again and again.
+ *
+ * textKey(CharSequence text)
+ * 		-A 64 bit hash of the normalized text - runs of white space as one space, no leading or trailing space.
+ * 		 Texts that only differ in spacing get the same key, and the key is found without building the query profile.
+ * 		 Case is kept, the kmers are case sensitive so the same text in upper case can be detected differently.
+ *
+ * fingerprint(RankedProfile query)
+ * 		-A 64 bit hash of the set of the top FINGERPRINT_KMERS kmers of the query profile.
+ * 		 Near duplicates (the same text with a different link, number or signature) usually share their most frequent kmers,
+ * 		 so they are found after the profile is built but before it is scored against every language.
+ * 		-Only texts of at most FINGERPRINT_MAX_LENGTH characters are fingerprinted. The top kmers of longer texts in the
+ * 		 same language are mostly the common kmers of that language, so different long documents share fingerprints.
+ * 		-A fingerprint hit only gives the language. The query is still scored against that one language
+ * 		 (see Database.getMatch()), so the distance is always the distance of the query and never of the earlier text.
+ *
+ * Both kinds of key are kept in one LinkedHashMap in access order, the least recently used entry is dropped
+ * once there are more than maxEntries. Hits and misses are counted in the Metrics.
+ * Cached detections are only used while the Database has the same generation, any change to its profiles empties the cache.
+ * Safe to share between threads.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class DetectionCache {
+
+	// number of the most frequent query kmers in a fingerprint
+	public static final int FINGERPRINT_KMERS = 32;
+
+	// longer texts are only looked up by their text key
+	public static final int FINGERPRINT_MAX_LENGTH = 500;
+
+	// 64 bit FNV offset basis and prime
+	private static final long SEED = 0xCBF29CE484222325L;
+	private static final long PRIME = 0x100000001B3L;
+
+	// variables
+	private final int maxEntries;
+	private final Map<Long, OutOfPlaceMetric> entries;
+	// generation of the database the entries were detected against
+	private int generation = -1;
+
+	// constructor
+	public DetectionCache(int maxEntries) {
+		super();
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be at least 1");
+		}
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<Long, OutOfPlaceMetric>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, OutOfPlaceMetric> eldest) {
+				return size() > DetectionCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached detection for the key, or null. Counts a hit or, if missed is true, a miss.
+	 * A text key lookup that misses is followed by a fingerprint lookup, so only the second one counts the miss.
+	 *
+	 * @param db
+	 * @param key
+	 * @param fingerprint true for a fingerprint key
+	 * @return
+	 */
+	public synchronized OutOfPlaceMetric get(Database db, long key, boolean fingerprint) {
+		checkGeneration(db);
+		OutOfPlaceMetric match = entries.get(key);
+		if (match != null) {
+			Metrics.get().cacheHit(fingerprint);
+		} else if (fingerprint) {
+			Metrics.get().cacheMiss();
+		}
+		return match;
+	}
+
+	/**
+	 * Caches the detection under the key.
+	 *
+	 * @param db
+	 * @param key
+	 * @param match
+	 */
+	public synchronized void put(Database db, long key, OutOfPlaceMetric match) {
+		checkGeneration(db);
+		entries.put(key, match);
+	}
+
+	// accessor methods
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Drops every entry.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the key of the normalized text.
+	 *
+	 * @param text
+	 * @return
+	 */
+	public static long textKey(CharSequence text) {
+		long h = SEED;
+		boolean space = false;
+		boolean started = false;
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				// a run of white space counts as one space, but only between words
+				space = started;
+				continue;
+			}
+			if (space) {
+				h = (h ^ ' ') * PRIME;
+				space = false;
+			}
+			h = (h ^ c) * PRIME;
+			started = true;
+		}
+
+		// text keys have the low bit clear, fingerprints have it set, so the two kinds never collide
+		return mix(h) & ~1L;
+	}
+
+	/**
+	 * Returns the fingerprint of the query profile.
+	 *
+	 * @param query
+	 * @return
+	 */
+	public static long fingerprint(RankedProfile query) {
+		int n = Math.min(FINGERPRINT_KMERS, query.size());
+		long[] top = new long[n];
+		for (int rank = 1; rank <= n; rank++) {
+			top[rank - 1] = query.getKmer(rank);
+		}
+
+		// the same kmers in a slightly different order are the same fingerprint
+		Arrays.sort(top);
+		long h = SEED ^ n;
+		for (long kmer : top) {
+			h = (h ^ kmer) * PRIME;
+		}
+		return mix(h) | 1L;
+	}
+
+	// empties the cache if the profiles of the database changed
+	private void checkGeneration(Database db) {
+		int current = db.getGeneration();
+		if (current != generation) {
+			entries.clear();
+			generation = current;
+		}
+	}
+
+	// spreads the bits so that the low bit is as random as the rest
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,68 @@
+package ie.gmit.sw;
+
+/**
+ * DetectionResult class is used to create the result of detecting the language of one document.
+ * The expected language is only known when the document came from a labelled WiLI file, otherwise it is null.
+ * The language is null when the document had no letters to detect, see isDetermined().
+ * 
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class DetectionResult {
+
+	// declare variables
+	private final String id;
+	private final String expected;
+	private final Language language;
+	private final int distance;
+
+	// constructor
+	public DetectionResult(String id, String expected, Language language, int distance) {
+		super();
+		this.id = id;
+		this.expected = expected;
+		this.language = language;
+		this.distance = distance;
+	}
+
+	// accessor methods
+	public String getId() {
+		return id;
+	}
+
+	public String getExpected() {
+		return expected;
+	}
+
+	public Language getLanguage() {
+		return language;
+	}
+
+	public int getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Returns false if the document had no letters, so no language was detected.
+	 * 
+	 * @return
+	 */
+	public boolean isDetermined() {
+		return language != null;
+	}
+
+	/**
+	 * Returns true if the document had a label and the detected language matches it.
+	 * 
+	 * @return
+	 */
+	public boolean isCorrect() {
+		return expected != null && language != null && language.name().equals(expected);
+	}
+
+	@Override
+	public String toString() {
+		return "[id=" + id + ", expected=" + expected + ", language=" + language + ", distance=" + distance + "]";
+	}
+}
@@ -0,0 +1,249 @@
+package ie.gmit.sw;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * DetectionServer class
+ * A long running HTTP service that answers language detection requests against a Database that is loaded once.
+ * 
+ * POST /detect
+ * 		-The request body is the UTF-8 text to detect. It is streamed through a StreamingDetector, so large bodies are fine.
+ * 		-The optional query parameter top (default 5, at most 20) sets how many of the closest languages are returned.
+ * 		-The response is JSON, for example
+ * 		 {"language":"French","distance":1234,"confidence":0.61,"matches":[{"language":"French","distance":1234,"score":0.72,"confidence":0.61},
+ * 		 {"language":"Occitan","distance":2345,"score":0.46,"confidence":0.39}]}
+ * 		-score and confidence are described in LanguageMatch, a low confidence for the first language means the text is ambiguous.
+ * 		-An empty body, or one with no letters, gets 400 {"error":"no text to detect"}.
+ * 
+ * GET /health
+ * 		-Returns "ok" once the server is running.
+ * 
+ * GET /metrics
+ * 		-Returns Metrics.dump(), the same text as the periodic metrics dump.
+ * 
+ * Any other path, including one that only starts with /detect, /health or /metrics, gets 404.
+ * Requests are handled concurrently on a pool from Workers, the Database is only read.
+ * Start it with Runner: java ie.gmit.sw.Runner serve &lt;profile file&gt; [port] [threads]
+ * 
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class DetectionServer {
+
+	// most languages a request can ask for
+	private static final int MAX_TOP = 20;
+
+	// variables
+	private final Database db;
+	private final HttpServer server;
+	private final ExecutorService pool;
+
+	/**
+	 * Creates a server for the database on the port, port 0 picks a free port.
+	 * 
+	 * @param db
+	 * @param port
+	 * @param threads
+	 * @throws IOException
+	 */
+	public DetectionServer(Database db, int port, int threads) throws IOException {
+		this(db, port, Workers.newExecutor(Workers.defaultMode(), threads));
+	}
+
+	/**
+	 * Creates a server for the database on the port that handles requests on the given executor.
+	 * The executor is shut down by stop().
+	 * 
+	 * @param db
+	 * @param port
+	 * @param pool
+	 * @throws IOException
+	 */
+	public DetectionServer(Database db, int port, ExecutorService pool) throws IOException {
+		super();
+		this.db = db;
+		this.pool = pool;
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+
+		server.createContext("/detect", this::detect);
+		server.createContext("/health", this::health);
+		server.createContext("/metrics", this::metrics);
+		server.setExecutor(pool);
+	}
+
+	/**
+	 * Starts answering requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops the server, waiting up to delay seconds for the current requests to finish.
+	 * 
+	 * @param delay
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		pool.shutdown();
+	}
+
+	// accessor method
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Handles POST /detect.
+	 * 
+	 * @param exchange
+	 * @throws IOException
+	 */
+	private void detect(HttpExchange exchange) throws IOException {
+		try {
+			if (!exactPath(exchange)) {
+				return;
+			}
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				send(exchange, 405, "{\"error\":\"use POST\"}");
+				return;
+			}
+
+			int top = Math.max(1, Math.min(MAX_TOP, queryInt(exchange.getRequestURI(), "top", 5)));
+
+			// stream the body through a detector of this request
+			StreamingDetector detector = new StreamingDetector(db);
+			LanguageMatch[] matches;
+			try (Reader in = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+				matches = detector.rank(in, top);
+			}
+
+			// an empty body or one with no letters matches every language equally, so there is nothing to report
+			if (detector.getQuerySize() == 0 || !detector.hasLetters()) {
+				send(exchange, 400, "{\"error\":\"no text to detect\"}");
+				return;
+			}
+
+			send(exchange, 200, toJson(matches));
+		} catch (NumberFormatException e) {
+			send(exchange, 400, "{\"error\":\"top must be a number\"}");
+		} catch (RuntimeException e) {
+			Metrics.get().error();
+			send(exchange, 500, "{\"error\":\"detection failed\"}");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Handles GET /health.
+	 * 
+	 * @param exchange
+	 * @throws IOException
+	 */
+	private void health(HttpExchange exchange) throws IOException {
+		try {
+			if (exactPath(exchange)) {
+				send(exchange, 200, "ok");
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Handles GET /metrics.
+	 * 
+	 * @param exchange
+	 * @throws IOException
+	 */
+	private void metrics(HttpExchange exchange) throws IOException {
+		try {
+			if (exactPath(exchange)) {
+				send(exchange, 200, Metrics.get().dump());
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Formats the matches as JSON. Language names are Java identifiers, so no escaping is needed.
+	 * With no matches the language is null.
+	 * 
+	 * @param matches
+	 * @return
+	 */
+	static String toJson(LanguageMatch[] matches) {
+		StringBuilder sb = new StringBuilder();
+		if (matches.length == 0) {
+			return sb.append("{\"language\":null,\"distance\":0,\"confidence\":").append(round(0)).append(",\"matches\":[]}").toString();
+		}
+		sb.append("{\"language\":\"").append(matches[0].getLanguage().name())
+			.append("\",\"distance\":").append(matches[0].getDistance())
+			.append(",\"confidence\":").append(round(matches[0].getConfidence()))
+			.append(",\"matches\":[");
+
+		for (int i = 0; i < matches.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"language\":\"").append(matches[i].getLanguage().name())
+				.append("\",\"distance\":").append(matches[i].getDistance())
+				.append(",\"score\":").append(round(matches[i].getScore()))
+				.append(",\"confidence\":").append(round(matches[i].getConfidence())).append('}');
+		}
+		return sb.append("]}").toString();
+	}
+
+	// 4 decimal places is plenty for a score, and keeps the JSON free of exponents
+	private static String round(double value) {
+		return String.format(Locale.ROOT, "%.4f", value);
+	}
+
+	// writes the response body
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		String type = body.startsWith("{") ? "application/json" : "text/plain";
+		exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	// contexts match any path that starts with them, so /healthz would reach /health - send 404 unless the path is exact
+	private static boolean exactPath(HttpExchange exchange) throws IOException {
+		if (exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+			return true;
+		}
+		send(exchange, 404, "{\"error\":\"not found\"}");
+		return false;
+	}
+
+	// reads an int query parameter, or returns the default if it is not there
+	private static int queryInt(URI uri, String name, int def) {
+		String query = uri.getRawQuery();
+		if (query == null) {
+			return def;
+		}
+		for (String param : query.split("&")) {
+			if (param.startsWith(name + "=")) {
+				return Integer.parseInt(param.substring(name.length() + 1));
+			}
+		}
+		return def;
+	}
+}
@@ -1,29 +1,34 @@
 package ie.gmit.sw;
 
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Map;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * ExecuteQuery class implements Runnable
  * 
  * parse()
- * 		-Get substrings of the queryText with kmers of size 2, 3 and 4.
- * 		-Add the kmer and the query language to the database
+ * 		-Hash the kmers of the queryText with the NGramExtractor, using the kmer sizes of the ProfileConfig of the database.
+ * 		-Add the kmer and the query language to the database, or to the private ProfileAccumulator of the worker
+ * 
+ * detect()
+ * 		-Counts the kmers of the query with a QueryProfiler, which uses the same NGramExtractor settings as parse()
+ * 		-Ranks the most frequent kmers by frequency, the most frequent kmer has rank 1. When rank reaches the profile size, stop
+ * 		-Returns the closest language and its distance, only scoring the languages written in the scripts of the query
+ * 		-With a DetectionCache, a query with the same normalized text as an earlier one returns the earlier detection instead.
+ * 		 A short query with the same profile fingerprint is only scored against the language of the earlier detection
  * 
  * analyseQuery()
- * 		-Break up the query into substrings of kmers of size 2, 3, 4 and converts the substring kmers into HashCodes
- * 		-If the hashCode for the kmer exists, add 1 to the hashCodes frequency. If it does not, add the new hashCode with a frequency of 1 to the Map
- * 		-Creats a temp List for storing the values in the Map.
- * 		-Each first language entry in will be the highest ranking one then put into the sortMap Map. When rank reaches 300, break
  * 		-Output the language in which the query appears to be written in 
  * 
  * run()
- * 		-While keepRunning is true the run method will take from the head of the Blocking Queue.
+ * 		-While keepRunning is true the run method will take a batch of lines from the head of the Blocking Queue.
  * 		-If the query language is equal to "Finished" (This means the poison has been found), keepRunning will be set to false and the method will be finished
  * 		-If the query language is not equal to "Finished", parse q 
+ * 		-In thread local mode the private counts are merged into the database once the poison has been taken,
+ * 		 or after every batch in bounded memory training (see Database.setHeavyHitters())
+ * 
+ * The Parser puts one poison on the queue of every consumer, so each ExecuteQuery needs its own queue (see IngestPipeline).
+ * In thread local mode each worker thread needs its own ExecuteQuery instance, and so does each thread calling detect().
  * 
  * @author G00362383 - Michael Mulholland
  * @version 1.0
@@ -32,25 +37,39 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ExecuteQuery implements Runnable{
 
 	// declare variables
-	private BlockingQueue<QueryFile> blockingQueue = null;
+	private BlockingQueue<List<QueryFile>> blockingQueue = null;
 	private Database db = null;
-	private int k;
 	private boolean keepRunning = true;
+	// private counts of this worker, null when adding straight into the shared database
+	private ProfileAccumulator local = null;
+	// hashes the kmers of the ProfileConfig of the database for training
+	private NGramExtractor extractor;
+	// builds the ranked profile of a query, created by the first detect()
+	private QueryProfiler profiler = null;
+	// optional cache of earlier detections, may be shared with other ExecuteQuerys
+	private DetectionCache cache = null;
 
-	// constructor
-	public ExecuteQuery(BlockingQueue<QueryFile> blockingQueue, Database db, int k) {
+	// constructors
+	public ExecuteQuery(BlockingQueue<List<QueryFile>> blockingQueue, Database db) {
+		this(blockingQueue, db, false);
+	}
+
+	public ExecuteQuery(BlockingQueue<List<QueryFile>> blockingQueue, Database db, boolean threadLocal) {
 		super();
 		this.blockingQueue = blockingQueue;
 		this.db = db;
-		this.k = k;
+		this.extractor = db.newExtractor();
+		if (threadLocal) {
+			this.local = new ProfileAccumulator();
+		}
 	}	
 
 	// accessor methods
-	public BlockingQueue<QueryFile> getBlockingQueue() {
+	public BlockingQueue<List<QueryFile>> getBlockingQueue() {
 		return blockingQueue;
 	}
 
-	public void setBlockingQueue(BlockingQueue<QueryFile> blockingQueue) {
+	public void setBlockingQueue(BlockingQueue<List<QueryFile>> blockingQueue) {
 		this.blockingQueue = blockingQueue;
 	}
 
@@ -60,135 +79,181 @@ public class ExecuteQuery implements Runnable{
 
 	public void setDb(Database db) {
 		this.db = db;
+		this.extractor = db.newExtractor();
+		this.profiler = null;
 	}
 
-	public int getK() {
-		return k;
+	public DetectionCache getCache() {
+		return cache;
 	}
 
-	public void setK(int k) {
-		this.k = k;
+	public void setCache(DetectionCache cache) {
+		this.cache = cache;
+	}
+
+	public boolean isThreadLocal() {
+		return local != null;
 	}
 
 	/**
-	 * Get substrings of the queryText with kmers of size 2, 3 and 4.
-	 * Add the kmer and the query language to the database
+	 * Hash the kmers of the queryText with the NGramExtractor.
+	 * Add the kmer and the query language to the database.
+	 * In thread local mode the kmer is counted in the private accumulator instead, without any locking.
 	 * 
 	 * @param query
-	 * @param ks
 	 */
-	private void parse(QueryFile query, int... ks) {
+	private void parse(QueryFile query) {
 		// gets the query language
 		Language language = Language.valueOf(query.getQueryLanguage());	
 
 		// adds the query text to a String so that it can be broke into kmers
 		String queryText = query.getQueryText();
 
-		// nessted for loop to get kmers of size 2, 3 and 4
-		for(int i = 2; i <= k; i++) {
-			for (int j = 0; j <= queryText.length() - i; j++) {
-				// get substrings of the queryText with kmers of size 2, 3 and 4.
-				CharSequence kmer = queryText.substring(j, j + i);
-
-				// add the kmer and the query language to the database
-				db.add(kmer, language);
-			}
+		// hash the kmers without creating a substring for each one
+		// and count the scripts the language is written in
+		Metrics.get().addNGrams(language, extractor.count(queryText.length()));
+		if (local != null) {
+			// count the kmer in the private accumulator
+			extractor.extract(queryText, kmer -> local.add(kmer, language));
+			local.addScripts(queryText, language);
+		} else {
+			// add the kmer and the query language to the database
+			extractor.extract(queryText, kmer -> db.add(kmer, language));
+			db.addScripts(queryText, language);
 		}
 	}// parse
 
 	/**
-	 * Creates two ConcurrentHashMaps. One for the query and one for sorting the Map.
-	 * Nested for loop to break up the query into substrings of kmers of size 2, 3 and 4.
-	 * Convert the substring kmers into HashCodes
-	 * If the hashCode for the kmer exists, add 1 to the hashCodes frequency
-	 * If the hashCode for the kmer does not exist, add the new hashCode with a frequency of 1 to the Map
-	 * 
-	 * Create a temp List for storing the values in the Map.
-	 * Each first language entry in will be the highest ranking one then put into the sortMap Map
-	 * When rank reaches 300, break
-	 * Output the language in which the query appears to be written in 
+	 * Counts the kmers and scripts of the query with the QueryProfiler of this ExecuteQuery,
+	 * ranks the most frequent kmers by frequency into an immutable profile once,
+	 * and scores that profile against the languages written in the scripts of the query.
+	 * Return the closest language and its out of place distance,
+	 * or null if the query has no letters to detect (for example an empty document), instead of an arbitrary language.
+	 * Only reads the database, but the QueryProfiler is reused, so each thread needs its own ExecuteQuery.
 	 * 
 	 * @param s
+	 * @return
 	 */
-	public void analyseQuery(String s) {
-		// ConcurrentHashMap for the query
-		Map<Integer, Kmer> queryDB = new ConcurrentHashMap<>();
+	public OutOfPlaceMetric detect(String s) {
+		long start = System.nanoTime();
 
-		// ConcurrentHashMap to sort the query
-		Map<Integer, Kmer> sortMap = new ConcurrentHashMap<>();
+		// the same text was detected before
+		long key = 0;
+		if (cache != null) {
+			key = DetectionCache.textKey(s);
+			OutOfPlaceMetric hit = cache.get(db, key, false);
+			if (hit != null) {
+				Metrics.get().detected(System.nanoTime() - start);
+				return hit;
+			}
+		}
 
-		// set frequency to 1
-		int frequency = 1;
+		// the profiler is only needed for queries, so it is created the first time
+		if (profiler == null) {
+			profiler = new QueryProfiler(db);
+		}
 
-		// nessted for loop to get kmers of size 2, 3 and 4
-		for(int i = 2; i <= 4; i++) {
-			for (int j = 0; j <= s.length() - i; j++) {
-				// get substrings of the query with kmers of size 2, 3 and 4.
-				CharSequence kmer = s.substring(j, j + i);
+		// count the kmers with the same sizes and width as the training text, and the scripts of the query
+		profiler.reset();
+		profiler.count(s);
 
-				// gets the kmer hashCode and stores it into an int
-				int kmerH = kmer.hashCode();
+		RankedProfile query = profiler.profile();
 
-				// if statement to see if the hashCode for the kmer exists
-				if (queryDB.containsKey(kmerH)) {
-					// if the hashCode for the kmer exists, add 1 to the kmers frequency
-					frequency += queryDB.get(kmerH).getFrequency();
-				}
+		// nothing to detect - every language would be as close as the others
+		if (query.size() == 0 || profiler.scripts().isEmpty()) {
+			Metrics.get().detected(System.nanoTime() - start);
+			return null;
+		}
 
-				// if the hashCode for the kmer does not exist, add the new hashCode with a frequency of 1 to the Map
-				queryDB.put(kmerH, new Kmer(kmerH, frequency));	
+		// a near duplicate of a short text was detected before, score the query against its language only
+		long fingerprint = 0;
+		boolean fingerprinted = cache != null && s.length() <= DetectionCache.FINGERPRINT_MAX_LENGTH;
+		if (fingerprinted) {
+			fingerprint = DetectionCache.fingerprint(query);
+			OutOfPlaceMetric hit = cache.get(db, fingerprint, true);
+			OutOfPlaceMetric match = hit == null ? null : db.getMatch(query, hit.getLanguage());
+			if (match != null) {
+				cache.put(db, key, match);
+				Metrics.get().detected(System.nanoTime() - start);
+				return match;
 			}
-		}// for
-
-		// temp List - gives us the values in the Map. 
-		List<Kmer> list = new ArrayList<Kmer>(queryDB.values());
-
-		// set rank to 1
-		int rank = 1;
-
-		// for each language entry
-		for (Kmer le : list) {
-			// the first language entry in will be the highest ranking one
-			// set rank to 1
-			le.setRank(rank);
-
-			// put into the sortMap Map
-			sortMap.put(le.getKmer(), le);	
+		}
 
-			// when rank reaches 300, break
-			if (rank == 300) break;
-			rank++;
+		// the closest language
+		OutOfPlaceMetric match = db.getBestMatch(query, profiler.scripts());
+		if (cache != null) {
+			cache.put(db, key, match);
+			if (fingerprinted) {
+				cache.put(db, fingerprint, match);
+			}
 		}
+		Metrics.get().detected(System.nanoTime() - start);
+		return match;
+	}
 
+	/**
+	 * Detects the language of the query and outputs the language in which the query appears to be written in.
+	 * 
+	 * @param s
+	 */
+	public void analyseQuery(String s) {
 		// output the language that it appears to be written in 
-		System.out.println("\nThe text appears to be written in.... " + db.getLanguage(sortMap));
+		OutOfPlaceMetric match = detect(s);
+		if (match == null) {
+			System.out.println("\nThe language of the text could not be determined, it has no letters");
+		} else {
+			System.out.println("\nThe text appears to be written in.... " + match.getLanguage());
+		}
 	}
 
 	/**
-	 * While keepRunning is true the run method will take from the head of the Blocking Queue.
+	 * While keepRunning is true the run method will take a batch of lines from the head of the Blocking Queue.
 	 * If the query language is equal to "Finished" (This means the poison has been found), keepRunning will be set to false and the method will be finished
 	 * If the query language is not equal to "Finished", parse q 
+	 * Once the loop ends, the private counts of a thread local worker are merged into the database
 	 */
 	@Override
 	public void run() {
 		// keep running while true
 		while (keepRunning) {
 			try {
-				// take from the head of the Blocking Queue
-				QueryFile q = blockingQueue.take();
-
-				// If the query language is equal to "Finished", the poison has been found
-				// set keepRunning to false
-				if (q.getQueryLanguage().equals("Finished")) {
-					keepRunning = false;
-				} else {
-					// If the query language is not equal to "Finished", parse q 
-					parse(q);
+				// take a batch from the head of the Blocking Queue, timing how long the queue was empty
+				long start = System.nanoTime();
+				List<QueryFile> batch = blockingQueue.take();
+				Metrics.get().addTakeBlocked(System.nanoTime() - start);
+
+				for (QueryFile q : batch) {
+					// If the query language is equal to "Finished", the poison has been found
+					// set keepRunning to false
+					if (q.getQueryLanguage().equals("Finished")) {
+						keepRunning = false;
+						break;
+					}
+
+					// If the query language is not equal to "Finished", parse q
+					// a bad record (for example an unknown label) is counted and skipped, the rest of the batch is still parsed
+					try {
+						parse(q);
+					} catch (RuntimeException e) {
+						Metrics.get().error();
+					}
+				}
+
+				// in bounded memory training the private tables are merged after every batch, so they stay small
+				if (local != null && db.getHeavyHitters() > 0) {
+					db.merge(local);
+					local.reset();
 				}
 			}catch (Exception e) {
-				System.out.println("4");
+				Metrics.get().error();
 				e.printStackTrace();
 			}
 		}
+
+		// merge phase - fold the private counts into the database
+		if (local != null) {
+			db.merge(local);
+			local.clear();
+		}
 	}
 }
@@ -0,0 +1,131 @@
+package ie.gmit.sw;
+
+/**
+ * HeavyHitters class implements KmerCounter
+ * Keeps the approximately most frequent kmers of a language in a fixed amount of memory,
+ * so training memory does not grow with the size of the corpus.
+ *
+ * Space-saving over a CountMinSketch:
+ * 		-At most capacity kmers are tracked, in a min-heap ordered by count with a KmerTable from kmer to heap position.
+ * 		-A tracked kmer has its count increased in place.
+ * 		-An untracked kmer replaces the least frequent tracked kmer once its CountMinSketch estimate is larger,
+ * 		 and starts from that estimate. Plain space-saving would start it from the evicted count plus one,
+ * 		 the sketch gives a much tighter count for kmers that were evicted earlier.
+ *
+ * Every kmer more frequent than about total / capacity is guaranteed to be tracked, so a capacity of a few times
+ * the profile size gives almost the same ranked profile as counting every kmer.
+ * This class is not thread safe.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class HeavyHitters implements KmerCounter {
+
+	// rows of the sketch, and counters per row for each tracked kmer
+	private static final int DEPTH = 4;
+	private static final int WIDTH_PER_KMER = 8;
+
+	// variables
+	private final CountMinSketch sketch;
+	// min-heap of the tracked kmers, the least frequent at 0
+	private final long[] kmers;
+	private final int[] counts;
+	// kmer to heap position + 1
+	private final KmerTable positions;
+	private int size;
+
+	// constructor
+	public HeavyHitters(int capacity) {
+		super();
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be at least 1");
+		}
+		this.sketch = new CountMinSketch(DEPTH, capacity * WIDTH_PER_KMER);
+		this.kmers = new long[capacity];
+		this.counts = new int[capacity];
+		this.positions = new KmerTable(capacity);
+	}
+
+	@Override
+	public void add(long kmer, int n) {
+		int estimate = sketch.add(kmer, n);
+
+		int pos = positions.get(kmer) - 1;
+		if (pos >= 0) {
+			// tracked - count it and move it down past the less frequent kmers
+			counts[pos] += n;
+			siftDown(pos);
+		} else if (size < kmers.length) {
+			// nothing has been evicted yet, so the count is exact
+			kmers[size] = kmer;
+			counts[size] = n;
+			positions.put(kmer, size + 1);
+			siftUp(size++);
+		} else if (estimate > counts[0]) {
+			// replace the least frequent kmer
+			positions.remove(kmers[0]);
+			kmers[0] = kmer;
+			counts[0] = estimate;
+			positions.put(kmer, 1);
+			siftDown(0);
+		}
+	}
+
+	@Override
+	public void forEach(KmerTable.Visitor v) {
+		for (int i = 0; i < size; i++) {
+			v.visit(kmers[i], counts[i]);
+		}
+	}
+
+	// accessor methods
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return kmers.length;
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (counts[parent] <= counts[i]) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && counts[child + 1] < counts[child]) {
+				child++;
+			}
+			if (counts[i] <= counts[child]) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int i, int j) {
+		long kmer = kmers[i];
+		kmers[i] = kmers[j];
+		kmers[j] = kmer;
+
+		int count = counts[i];
+		counts[i] = counts[j];
+		counts[j] = count;
+
+		positions.put(kmers[i], i + 1);
+		positions.put(kmers[j], j + 1);
+	}
+}
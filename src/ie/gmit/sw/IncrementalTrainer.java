@@ -0,0 +1,71 @@
+package ie.gmit.sw;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * IncrementalTrainer class
+ * Adds a file of new text@label records to a Database whose profiles have already been ranked,
+ * and ranks only the languages in the file again (see Database.addSample() and Database.rerank()).
+ *
+ * Lines that do not split into exactly two parts at the '@' symbol are skipped, as the Parser does.
+ * A label that is not a Language stops the update before anything is added, so a bad file never half updates the database.
+ * A database loaded from a ProfileFile only has the top kmers of each language and, if it was saved with them, the CountMinSketches
+ * of their counts, so the updated profiles are approximate (see Database.setSketchWidth()).
+ * Start it with Runner: java ie.gmit.sw.Runner train &lt;profile file&gt; &lt;records file&gt;
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class IncrementalTrainer {
+
+	private IncrementalTrainer() {
+	}
+
+	/**
+	 * Adds the records of the UTF-8 file to the database and ranks the languages they are labelled with again.
+	 * Returns the languages that were ranked.
+	 *
+	 * @param db
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static Set<Language> train(Database db, Path file) throws IOException {
+		List<QueryFile> records = new ArrayList<>();
+
+		// read and check every record first
+		try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line = null;
+			int lineNumber = 0;
+
+			while ((line = br.readLine()) != null) {
+				lineNumber++;
+				String[] record = line.trim().split("@");
+				if (record.length != 2) {
+					continue;
+				}
+
+				try {
+					Language.valueOf(record[1]);
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Unknown language " + record[1] + " on line " + lineNumber + " of " + file);
+				}
+				records.add(new QueryFile(record[0], record[1]));
+			}
+		}
+
+		// count the new samples and rank the languages they belong to
+		for (QueryFile record : records) {
+			db.addSample(record.getQueryText(), Language.valueOf(record.getQueryLanguage()));
+		}
+		return db.rerank();
+	}
+}
@@ -0,0 +1,162 @@
+package ie.gmit.sw;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * IngestPipeline class
+ * Builds the subject database from a WiLI dataset with one Parser thread and a number of ExecuteQuery consumers.
+ * 
+ * The pipeline is sharded and batched:
+ * 		-each consumer has its own BlockingQueue, so the consumers never compete for the same queue
+ * 		-the Parser puts batches of lines on the queues in turn, so one queue operation moves batchSize lines
+ * 		-the Parser puts one poison on each queue once the dataset has been read
+ * 
+ * queueCapacity is the number of batches each queue can hold, batchSize is the number of lines per batch
+ * and consumers is the number of ExecuteQuery tasks, by default one per available core.
+ * With more than one reader the dataset is split into line aligned byte ranges which are parsed in parallel
+ * by ChunkedParser threads over a memory mapped file, otherwise a single Parser thread reads it line by line.
+ * In thread local mode (the default) each consumer counts into its own tables which are merged into the database at the end.
+ * The readers and consumers run as tasks on an executor from Workers, mode picks platform threads, a ForkJoinPool or virtual threads.
+ * 
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class IngestPipeline {
+
+	// variables
+	private String file;
+	private int queueCapacity = 10;
+	private int batchSize = 256;
+	private int consumers = Workers.defaultCount();
+	private int readers = 1;
+	private boolean threadLocal = true;
+	private Workers.Mode mode = Workers.defaultMode();
+
+	// constructor
+	public IngestPipeline(String file) {
+		super();
+		this.file = file;
+	}
+
+	// accessor methods
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = requirePositive(queueCapacity, "queueCapacity");
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = requirePositive(batchSize, "batchSize");
+	}
+
+	public int getConsumers() {
+		return consumers;
+	}
+
+	public void setConsumers(int consumers) {
+		this.consumers = requirePositive(consumers, "consumers");
+	}
+
+	public int getReaders() {
+		return readers;
+	}
+
+	public void setReaders(int readers) {
+		this.readers = requirePositive(readers, "readers");
+	}
+
+	public boolean isThreadLocal() {
+		return threadLocal;
+	}
+
+	public void setThreadLocal(boolean threadLocal) {
+		this.threadLocal = threadLocal;
+	}
+
+	public Workers.Mode getMode() {
+		return mode;
+	}
+
+	public void setMode(Workers.Mode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Parses the dataset into the database and waits for every task to finish.
+	 * The kmers are counted with the ProfileConfig of the database.
+	 * resize() is not called, so more datasets can be added before the profiles are ranked.
+	 * 
+	 * @param db
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void run(Database db) throws IOException, InterruptedException {
+		// one queue per consumer
+		List<BlockingQueue<List<QueryFile>>> queues = new ArrayList<>();
+		for (int i = 0; i < consumers; i++) {
+			queues.add(new ArrayBlockingQueue<List<QueryFile>>(queueCapacity));
+		}
+
+		// create tasks - the readers and one ExecuteQuery per queue
+		List<Runnable> tasks = new ArrayList<>();
+		if (readers == 1) {
+			tasks.add(new Parser(file, queues, batchSize));
+		} else {
+			// one ChunkedParser per line aligned range, the last one to finish poisons the queues
+			Path path = Paths.get(file);
+			long[] ranges = ChunkedParser.split(path, readers);
+			AtomicInteger running = new AtomicInteger(ranges.length - 1);
+
+			for (int i = 0; i < ranges.length - 1; i++) {
+				tasks.add(new ChunkedParser(path, ranges[i], ranges[i + 1], queues, batchSize, i, running));
+			}
+		}
+		for (int i = 0; i < consumers; i++) {
+			tasks.add(new ExecuteQuery(queues.get(i), db, threadLocal));
+		}
+
+		// the readers and consumers block on each other's queues, so every task needs its own thread
+		ExecutorService pool = Workers.newExecutor(mode, tasks.size());
+		Metrics.get().ingestStarted(queues);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (Runnable task : tasks) {
+				futures.add(pool.submit(task));
+			}
+
+			// wait for every task
+			for (Future<?> task : futures) {
+				task.get();
+			}
+		} catch (ExecutionException e) {
+			throw new IOException("Ingest failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+			Metrics.get().ingestFinished();
+		}
+	}
+
+	private static int requirePositive(int value, String name) {
+		if (value < 1) {
+			throw new IllegalArgumentException(name + " must be at least 1");
+		}
+		return value;
+	}
+}
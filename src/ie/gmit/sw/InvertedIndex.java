@@ -0,0 +1,134 @@
+package ie.gmit.sw;
+
+/**
+ * InvertedIndex class
+ * Maps each kmer to the (language, rank) postings of every language profile that contains it,
+ * so a query can be scored against all 235 languages in one pass over its kmers
+ * instead of one hash lookup per query kmer per language.
+ *
+ * distances(long[] kmers, int[] ranks, int n, int[] out)
+ * 		-Every language starts with the distance it would have if none of the query kmers were in its profile.
+ * 		-For each query kmer, walk its postings and replace the "not found" distance with the subject rank minus the query rank.
+ * 		-The distances are accumulated in a primitive array indexed by language.
+ *
+ * The index is built from the ProfileColumns and uses the same language positions.
+ * The index is immutable once built and can be shared by any number of threads.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class InvertedIndex {
+
+	// variables
+	// the frozen profiles the index was built from, a language is referred to by its position in them
+	private final ProfileColumns columns;
+	// number of kmers in the profile of each language
+	private final int[] profileSizes;
+	// maps each kmer to its id plus 1
+	private final KmerTable ids;
+	// the postings of kmer id i are at offsets[i] to offsets[i + 1]
+	private final int[] offsets;
+	private final int[] postingLanguages;
+	private final int[] postingRanks;
+
+	/**
+	 * Builds the index from the frozen profiles of the languages.
+	 *
+	 * @param columns
+	 */
+	public InvertedIndex(ProfileColumns columns) {
+		super();
+		this.columns = columns;
+		this.profileSizes = new int[columns.size()];
+
+		// count the postings of each kmer
+		KmerTable counts = new KmerTable();
+		int total = columns.getStart(columns.size());
+		for (int l = 0; l < columns.size(); l++) {
+			profileSizes[l] = columns.getProfileSize(l);
+		}
+		for (int p = 0; p < total; p++) {
+			counts.increment(columns.getKmer(p));
+		}
+
+		// give each distinct kmer an id and a range in the postings arrays
+		int distinct = counts.size();
+		long[] kmers = new long[distinct];
+		int[] postingCounts = new int[distinct];
+		counts.copyTo(kmers, postingCounts);
+
+		ids = new KmerTable(distinct);
+		offsets = new int[distinct + 1];
+		for (int i = 0; i < distinct; i++) {
+			ids.add(kmers[i], i + 1);
+			offsets[i + 1] = offsets[i] + postingCounts[i];
+		}
+
+		// fill in the postings, language by language so each kmer has its postings in language order
+		postingLanguages = new int[total];
+		postingRanks = new int[total];
+		int[] next = new int[distinct];
+		System.arraycopy(offsets, 0, next, 0, distinct);
+
+		for (int l = 0; l < columns.size(); l++) {
+			for (int i = columns.getStart(l); i < columns.getStart(l + 1); i++) {
+				int id = ids.get(columns.getKmer(i)) - 1;
+				int p = next[id]++;
+				postingLanguages[p] = l;
+				postingRanks[p] = columns.getRankAt(i);
+			}
+		}
+	}
+
+	/**
+	 * Computes the out of place distance of the query to every language.
+	 * out[l] is the distance to getLanguage(l).
+	 * A query kmer that is not in a profile adds the profile size plus 1,
+	 * a query kmer that is in a profile adds the subject rank minus the query rank.
+	 * The query and the profiles must have at most ProfileConfig.MAX_PROFILE_SIZE kmers, so the distances fit in an int.
+	 *
+	 * @param kmers the query kmers
+	 * @param ranks the rank of each query kmer
+	 * @param n the number of query kmers
+	 * @param out receives one distance per language
+	 */
+	public void distances(long[] kmers, int[] ranks, int n, int[] out) {
+		// start as if no query kmer was found in any profile
+		for (int l = 0; l < profileSizes.length; l++) {
+			out[l] = n * (profileSizes[l] + 1);
+		}
+
+		// walk the query once, correcting the languages that do contain the kmer
+		for (int i = 0; i < n; i++) {
+			int id = ids.get(kmers[i]) - 1;
+			if (id < 0) {
+				continue;
+			}
+
+			for (int p = offsets[id]; p < offsets[id + 1]; p++) {
+				int l = postingLanguages[p];
+				out[l] += postingRanks[p] - ranks[i] - (profileSizes[l] + 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the language at the given position of the index.
+	 *
+	 * @param l
+	 * @return
+	 */
+	public Language getLanguage(int l) {
+		return columns.getLanguage(l);
+	}
+
+	// accessor methods
+	public ProfileColumns getColumns() {
+		return columns;
+	}
+
+	public int size() {
+		return columns.size();
+	}
+}
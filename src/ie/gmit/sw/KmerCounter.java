@@ -0,0 +1,46 @@
+package ie.gmit.sw;
+
+/**
+ * KmerCounter interface
+ * The kmer counts of one language while the Database is being trained.
+ * KmerTable counts every kmer exactly, HeavyHitters only keeps the most frequent ones in a fixed amount of memory.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public interface KmerCounter {
+
+	/**
+	 * Adds n to the frequency of the kmer.
+	 *
+	 * @param kmer
+	 * @param n
+	 */
+	void add(long kmer, int n);
+
+	/**
+	 * Visits every kmer that is counted and its frequency. The order is not defined.
+	 *
+	 * @param v
+	 */
+	void forEach(KmerTable.Visitor v);
+
+	/**
+	 * Adds 1 to the frequency of the kmer.
+	 *
+	 * @param kmer
+	 */
+	default void increment(long kmer) {
+		add(kmer, 1);
+	}
+
+	/**
+	 * Adds every frequency of the table to this counter.
+	 *
+	 * @param other
+	 */
+	default void addAll(KmerTable other) {
+		other.forEach(this::add);
+	}
+}
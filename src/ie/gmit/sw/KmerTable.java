@@ -0,0 +1,316 @@
+package ie.gmit.sw;
+
+import java.util.Arrays;
+
+/**
+ * KmerTable class
+ * A primitive open-addressing hash table that maps a long kmer hash to an int frequency.
+ * Used instead of a Map&lt;Long, Integer&gt; so that counting a kmer does not allocate
+ * a boxed key or count for every n-gram in the dataset.
+ *
+ * increment(long kmer)
+ * 		-Adds 1 to the frequency of the kmer, inserting it if it is not in the table.
+ *
+ * add(long kmer, int n)
+ * 		-Adds n to the frequency of the kmer in place.
+ *
+ * put(long kmer, int n)
+ * 		-Sets the frequency of the kmer to n, removing it if n is 0.
+ *
+ * remove(long kmer)
+ * 		-Removes the kmer, moving later entries of its probe run back so no tombstone is needed.
+ *
+ * decrement(long kmer)
+ * 		-Subtracts 1 from the frequency of the kmer, removing it when the frequency reaches 0.
+ *
+ * get(long kmer)
+ * 		-Returns the frequency of the kmer or 0 if it is not in the table.
+ *
+ * addAll(KmerTable other)
+ * 		-Adds every frequency of the other table to this table.
+ *
+ * forEach(Visitor v)
+ * 		-Visits every kmer and frequency in the table.
+ *
+ * This class is not thread safe.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class KmerTable implements KmerCounter {
+
+	// the table is grown once it is three quarters full
+	private static final float LOAD_FACTOR = 0.75f;
+
+	// variables
+	// a slot is empty when its frequency is 0, so no sentinel kmer is needed
+	private long[] kmers;
+	private int[] frequencies;
+	private int size;
+	private int threshold;
+
+	// constructors
+	public KmerTable() {
+		this(16);
+	}
+
+	public KmerTable(int expected) {
+		super();
+		allocate(capacityFor(expected));
+	}
+
+	/**
+	 * Callback used by forEach() to visit each entry of the table.
+	 */
+	public interface Visitor {
+		void visit(long kmer, int frequency);
+	}
+
+	/**
+	 * Adds n to the frequency of the kmer.
+	 * If the kmer is not in the table it is inserted with a frequency of n.
+	 * Does nothing if n is not positive, a frequency of 0 would leave an entry that reads as an empty slot.
+	 *
+	 * @param kmer
+	 * @param n
+	 */
+	@Override
+	public void add(long kmer, int n) {
+		if (n <= 0) {
+			return;
+		}
+
+		int mask = kmers.length - 1;
+		int slot = mix(kmer) & mask;
+
+		// linear probe until the kmer or an empty slot is found
+		while (frequencies[slot] != 0) {
+			if (kmers[slot] == kmer) {
+				frequencies[slot] += n;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		// insert the new kmer
+		kmers[slot] = kmer;
+		frequencies[slot] = n;
+
+		// grow the table once it gets too full
+		if (++size > threshold) {
+			rehash(kmers.length << 1);
+		}
+	}
+
+	/**
+	 * Sets the frequency of the kmer to n. A frequency of 0 removes the kmer.
+	 *
+	 * @param kmer
+	 * @param n
+	 */
+	public void put(long kmer, int n) {
+		if (n == 0) {
+			remove(kmer);
+			return;
+		}
+
+		int mask = kmers.length - 1;
+		int slot = mix(kmer) & mask;
+
+		while (frequencies[slot] != 0) {
+			if (kmers[slot] == kmer) {
+				frequencies[slot] = n;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		kmers[slot] = kmer;
+		frequencies[slot] = n;
+		if (++size > threshold) {
+			rehash(kmers.length << 1);
+		}
+	}
+
+	/**
+	 * Removes the kmer and returns its frequency, or 0 if it was not in the table.
+	 *
+	 * @param kmer
+	 * @return
+	 */
+	public int remove(long kmer) {
+		int mask = kmers.length - 1;
+		int slot = mix(kmer) & mask;
+
+		while (frequencies[slot] != 0) {
+			if (kmers[slot] == kmer) {
+				int frequency = frequencies[slot];
+				closeGap(slot);
+				size--;
+				return frequency;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return 0;
+	}
+
+	/**
+	 * Subtracts 1 from the frequency of the kmer and removes it once the frequency is 0.
+	 * A kmer that is not in the table is ignored.
+	 *
+	 * @param kmer
+	 */
+	public void decrement(long kmer) {
+		int mask = kmers.length - 1;
+		int slot = mix(kmer) & mask;
+
+		while (frequencies[slot] != 0) {
+			if (kmers[slot] == kmer) {
+				if (--frequencies[slot] == 0) {
+					closeGap(slot);
+					size--;
+				}
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Returns the frequency of the kmer or 0 if it is not in the table.
+	 *
+	 * @param kmer
+	 * @return
+	 */
+	public int get(long kmer) {
+		int mask = kmers.length - 1;
+		int slot = mix(kmer) & mask;
+
+		while (frequencies[slot] != 0) {
+			if (kmers[slot] == kmer) {
+				return frequencies[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns true if the table contains the kmer.
+	 *
+	 * @param kmer
+	 * @return
+	 */
+	public boolean contains(long kmer) {
+		return get(kmer) != 0;
+	}
+
+	/**
+	 * Visits every kmer and its frequency. The order is not defined.
+	 *
+	 * @param v
+	 */
+	@Override
+	public void forEach(Visitor v) {
+		for (int i = 0; i < kmers.length; i++) {
+			if (frequencies[i] != 0) {
+				v.visit(kmers[i], frequencies[i]);
+			}
+		}
+	}
+
+	/**
+	 * Copies the kmers and their frequencies into the two arrays, which must hold at least size() entries.
+	 * The kmer at index i of the first array has the frequency at index i of the second array.
+	 *
+	 * @param kmersOut
+	 * @param frequenciesOut
+	 */
+	public void copyTo(long[] kmersOut, int[] frequenciesOut) {
+		int n = 0;
+		for (int i = 0; i < kmers.length; i++) {
+			if (frequencies[i] != 0) {
+				kmersOut[n] = kmers[i];
+				frequenciesOut[n] = frequencies[i];
+				n++;
+			}
+		}
+	}
+
+	/**
+	 * Removes every entry but keeps the allocated arrays.
+	 */
+	public void clear() {
+		Arrays.fill(frequencies, 0);
+		size = 0;
+	}
+
+	// accessor method
+	public int size() {
+		return size;
+	}
+
+	// empties the slot and moves back any later entry of the probe run that would no longer be found
+	private void closeGap(int gap) {
+		int mask = kmers.length - 1;
+		int i = gap;
+
+		while (true) {
+			i = (i + 1) & mask;
+			if (frequencies[i] == 0) {
+				break;
+			}
+
+			// the entry can fill the gap if the gap lies between its home slot and where it is now
+			int home = mix(kmers[i]) & mask;
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				kmers[gap] = kmers[i];
+				frequencies[gap] = frequencies[i];
+				gap = i;
+			}
+		}
+		frequencies[gap] = 0;
+	}
+
+	// spreads the bits of the kmer so that similar hash codes do not cluster
+	private static int mix(long kmer) {
+		long h = kmer * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	// smallest power of two that holds the expected number of entries
+	private static int capacityFor(int expected) {
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < expected) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		kmers = new long[capacity];
+		frequencies = new int[capacity];
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	// re-inserts every entry into larger arrays
+	private void rehash(int capacity) {
+		long[] oldKmers = kmers;
+		int[] oldFrequencies = frequencies;
+
+		allocate(capacity);
+		int mask = capacity - 1;
+
+		for (int i = 0; i < oldKmers.length; i++) {
+			if (oldFrequencies[i] != 0) {
+				int slot = mix(oldKmers[i]) & mask;
+				while (frequencies[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				kmers[slot] = oldKmers[i];
+				frequencies[slot] = oldFrequencies[i];
+			}
+		}
+	}
+}
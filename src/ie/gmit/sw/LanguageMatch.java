@@ -0,0 +1,59 @@
+package ie.gmit.sw;
+
+/**
+ * LanguageMatch class
+ * One of the closest languages to a query, with its out of place distance and two normalized scores.
+ *
+ * getScore()
+ * 		-1 minus the distance divided by the largest distance the query could have from the language
+ * 		 (every query kmer missing from the profile). 1 is a perfect match, 0 shares nothing with the query.
+ *
+ * getConfidence()
+ * 		-The share of the score of this language out of the scores of the Database.CONFIDENCE_LANGUAGES closest languages
+ * 		 (see Database.rank()), so it does not depend on how many languages were asked for.
+ * 		 Two languages that are almost as close as each other get almost the same confidence, so a low confidence
+ * 		 for the best language marks an ambiguous detection.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class LanguageMatch {
+
+	// variables
+	private final Language language;
+	private final int distance;
+	private final double score;
+	private final double confidence;
+
+	// constructor
+	public LanguageMatch(Language language, int distance, double score, double confidence) {
+		super();
+		this.language = language;
+		this.distance = distance;
+		this.score = score;
+		this.confidence = confidence;
+	}
+
+	// accessor methods
+	public Language getLanguage() {
+		return language;
+	}
+
+	public int getDistance() {
+		return distance;
+	}
+
+	public double getScore() {
+		return score;
+	}
+
+	public double getConfidence() {
+		return confidence;
+	}
+
+	@Override
+	public String toString() {
+		return "[lang=" + language + ", distance=" + distance + ", confidence=" + String.format("%.3f", confidence) + "]";
+	}
+}
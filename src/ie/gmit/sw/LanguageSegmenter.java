@@ -0,0 +1,176 @@
+package ie.gmit.sw;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LanguageSegmenter class
+ * Splits a document that mixes languages into LanguageSpans, instead of giving the whole document one language.
+ *
+ * segment(CharSequence text)
+ * 		-A window of window characters slides over the text step characters at a time.
+ * 		-The kmer counts of the window are kept up to date by a QueryProfiler: the kmers and scripts of the characters
+ * 		 leaving the window are uncounted and those of the characters entering it are counted, so counting costs about
+ * 		 step characters of work whatever the size of the window. The kmers that start in the last maxN - 1 characters
+ * 		 of the window are counted again as well, because they were cut short at the old end of the window.
+ * 		-Each window is then ranked with TopK over the whole count table and scored against the candidate languages of
+ * 		 its scripts (see Database.getRankedMatches()). This part is not incremental and costs time in proportion to the
+ * 		 window, so the table is sized for the kmers of one window to keep it small.
+ * 		-Each window owns the characters around its centre, up to half way to the centre of the next window,
+ * 		 and neighbouring windows with the same language are joined into one span.
+ * 		-A window with no kmers (only spaces or punctuation) joins the span before it, or the first span.
+ *
+ * The spans cover the whole text with no gaps and no overlaps. A text shorter than the window is one span.
+ * A LanguageSegmenter only reads the database, but each instance must only be used by one thread at a time.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class LanguageSegmenter {
+
+	// default window and step in characters
+	public static final int DEFAULT_WINDOW = 200;
+	public static final int DEFAULT_STEP = 50;
+
+	// variables
+	private final Database db;
+	private final int window;
+	private final int step;
+	// the profile of the current window
+	private final QueryProfiler profiler;
+
+	// constructors
+	public LanguageSegmenter(Database db) {
+		this(db, DEFAULT_WINDOW, DEFAULT_STEP);
+	}
+
+	public LanguageSegmenter(Database db, int window, int step) {
+		super();
+		if (step < 1 || window < step) {
+			throw new IllegalArgumentException("Invalid window " + window + " and step " + step);
+		}
+		this.db = db;
+		this.window = window;
+		this.step = step;
+		// room for every kmer of a window, ranking visits every slot of the table
+		this.profiler = new QueryProfiler(db, (int) Math.min(Integer.MAX_VALUE, db.newExtractor().count(window)));
+	}
+
+	// accessor methods
+	public int getWindow() {
+		return window;
+	}
+
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * Segments a UTF-8 file. The whole file is read into memory.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public List<LanguageSpan> segment(Path file) throws IOException {
+		return segment(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns the language spans of the text in order, or an empty list if the text has no kmers at all.
+	 *
+	 * @param text
+	 * @return
+	 */
+	public List<LanguageSpan> segment(CharSequence text) {
+		long startTime = System.nanoTime();
+		int length = text.length();
+		int maxN = profiler.getMaxN();
+
+		// the start of every window, the last one ends at the end of the text
+		int last = Math.max(0, length - window);
+		int count = (last + step - 1) / step + 1;
+		int[] starts = new int[count];
+		for (int w = 0; w < count; w++) {
+			starts[w] = Math.min(w * step, last);
+		}
+
+		// the best language of each window, null for a window with no kmers
+		LanguageMatch[] matches = new LanguageMatch[count];
+		profiler.reset();
+		int s = 0;
+		int e = 0;
+
+		for (int w = 0; w < count; w++) {
+			int nextS = starts[w];
+			int nextE = Math.min(nextS + window, length);
+
+			if (nextS >= e) {
+				// the first window, nothing to keep
+				profiler.reset();
+				profiler.countKmers(text, nextS, nextE, nextE);
+				profiler.countScripts(text, nextS, nextE);
+			} else {
+				// take back the kmers that start in the characters leaving the window
+				profiler.uncountKmers(text, s, e, nextS);
+				profiler.uncountScripts(text, s, nextS);
+
+				// recount the kmers that were cut short at the old end of the window, now with the characters entering it
+				int tail = Math.max(nextS, e - maxN + 1);
+				profiler.uncountKmers(text, tail, e, e);
+				profiler.countKmers(text, tail, nextE, nextE);
+				profiler.countScripts(text, e, nextE);
+			}
+			s = nextS;
+			e = nextE;
+
+			RankedProfile query = profiler.profile();
+			if (query.size() > 0) {
+				matches[w] = db.getRankedMatches(query, 1, profiler.scripts())[0];
+			}
+		}
+
+		List<LanguageSpan> spans = toSpans(starts, matches, length);
+		Metrics.get().detected(System.nanoTime() - startTime);
+		return spans;
+	}
+
+	// joins the characters owned by neighbouring windows with the same language into spans
+	private List<LanguageSpan> toSpans(int[] starts, LanguageMatch[] matches, int length) {
+		List<LanguageSpan> spans = new ArrayList<>();
+		Language language = null;
+		int spanStart = 0;
+		double confidence = 0;
+		int windows = 0;
+
+		for (int w = 0; w < starts.length; w++) {
+			LanguageMatch match = matches[w];
+
+			if (match != null && match.getLanguage() != language) {
+				if (language != null) {
+					// a window owns up to half way between its centre and the centre of the next window,
+					// so the last span ends half way to this window, taking any windows with no kmers with it
+					int spanEnd = (starts[w - 1] + starts[w] + window) / 2;
+					spans.add(new LanguageSpan(language, spanStart, spanEnd, confidence / windows));
+					spanStart = spanEnd;
+				}
+				language = match.getLanguage();
+				confidence = 0;
+				windows = 0;
+			}
+			if (match != null) {
+				confidence += match.getConfidence();
+				windows++;
+			}
+			if (w + 1 == starts.length && language != null) {
+				spans.add(new LanguageSpan(language, spanStart, length, confidence / windows));
+			}
+		}
+		return spans;
+	}
+}
@@ -0,0 +1,59 @@
+package ie.gmit.sw;
+
+/**
+ * LanguageSpan class
+ * A run of characters of a document that is written in one language, found by the LanguageSegmenter.
+ *
+ * getStart() and getEnd()
+ * 		-The offsets of the first character of the span and of the character after it, so text.substring(start, end) is the span.
+ *
+ * getConfidence()
+ * 		-The mean confidence of the windows that make up the span (see LanguageMatch.getConfidence()).
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class LanguageSpan {
+
+	// variables
+	private final Language language;
+	private final int start;
+	private final int end;
+	private final double confidence;
+
+	// constructor
+	public LanguageSpan(Language language, int start, int end, double confidence) {
+		super();
+		this.language = language;
+		this.start = start;
+		this.end = end;
+		this.confidence = confidence;
+	}
+
+	// accessor methods
+	public Language getLanguage() {
+		return language;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	public int length() {
+		return end - start;
+	}
+
+	public double getConfidence() {
+		return confidence;
+	}
+
+	@Override
+	public String toString() {
+		return "[lang=" + language + ", start=" + start + ", end=" + end + ", confidence=" + String.format("%.3f", confidence) + "]";
+	}
+}
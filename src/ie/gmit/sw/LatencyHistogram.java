@@ -0,0 +1,97 @@
+package ie.gmit.sw;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram class
+ * Counts latencies into power of two microsecond buckets, so recording one costs a couple of instructions
+ * and a LongAdder increment and never allocates or locks.
+ *
+ * Bucket 0 holds latencies below 2us, bucket i holds latencies from 2^i up to 2^(i + 1) microseconds.
+ * percentile() returns the upper bound of the bucket the percentile falls in, so it is accurate to within a factor of two.
+ * Safe to record into from many threads at once.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class LatencyHistogram {
+
+	// 2^31 us is about 36 minutes, anything slower goes in the last bucket
+	private static final int BUCKETS = 32;
+
+	// variables
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+
+	// constructor
+	public LatencyHistogram() {
+		super();
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records one latency.
+	 *
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(1, nanos / 1000);
+		int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+		buckets[bucket].increment();
+		count.increment();
+		totalNanos.add(nanos);
+	}
+
+	// accessor methods
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getMeanMicros() {
+		long n = count.sum();
+		return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+	}
+
+	/**
+	 * Returns the upper bound in microseconds of the bucket the percentile (0 to 100) falls in, or 0 if nothing was recorded.
+	 *
+	 * @param percentile
+	 * @return
+	 */
+	public long percentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(1, target)) {
+				return 1L << (i + 1);
+			}
+		}
+		return 1L << BUCKETS;
+	}
+
+	/**
+	 * Empties every bucket.
+	 */
+	public void reset() {
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		count.reset();
+		totalNanos.reset();
+	}
+}
@@ -2,11 +2,9 @@ package ie.gmit.sw;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Scanner;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * Menu class displays the header and prompts the user to enter two files.
@@ -21,10 +19,10 @@ import java.util.concurrent.BlockingQueue;
 public class Menu {
 
 	// variables
-	private int kmerSize = 4; // has to stay at 4
+	// kmer sizes, profile size and hash width, set with -Dprofile.* (see ProfileConfig)
+	private ProfileConfig config = ProfileConfig.fromSystemProperties();
 	private volatile boolean found = true;
 	private String inFile;
-	private String query;
 	private int userChoice;
 	File databaseFile;
 	Scanner sc = new Scanner(System.in);
@@ -80,51 +78,14 @@ public class Menu {
 				System.out.println("No Such File");
 			}else {
 				found = true;
-				System.out.println("\nBuilding subject database...please wait...");
 			}
 		} while (!found);
 
-		// BlockingQueue for the the first input file
-		BlockingQueue<QueryFile> queue = new ArrayBlockingQueue<QueryFile>(10);
+		// load the saved profiles if they are up to date, otherwise parse the dataset and save them
+		Database db = loadOrBuildDatabase();
 
-		// passes the first input file and the BlockingQueue to the constructor in the Parser class
-		Parser p = new Parser(inFile, queue);
-
-		// creates a new instance of Database
-		Database db = new Database();
-
-		// passes the BlockingQueue, database and kmer size to the ExecuteQuery class
-		ExecuteQuery exQuery = new ExecuteQuery(queue, db, kmerSize);
-
-		// create threads
-		Thread t1 = new Thread(p);
-		Thread t2 = new Thread(exQuery);
-		Thread t3 = new Thread(exQuery);
-		Thread t4 = new Thread(exQuery);
-		Thread t5 = new Thread(exQuery);
-
-		// start threads
-		t1.start();
-		t2.start();
-		t3.start();
-		t4.start();
-		t5.start();
-
-		try {
-			// join the threads
-			// It will put the current thread on wait until the thread on which it is called is dead. 
-			// If thread is interrupted then it will throw InterruptedException.
-			t1.join();
-			t2.join();
-			t3.join();
-			t4.join();
-			t5.join();
-		} catch (InterruptedException e1) {
-			e1.printStackTrace();
-		}
-
-		// get the top 300 most frequent
-		db.resize(300);
+		// reads the query file in chunks, so any size of file can be analysed
+		StreamingDetector detector = new StreamingDetector(db);
 
 		do {
 			//Enter Query location
@@ -140,15 +101,18 @@ public class Menu {
 				System.out.println("\nProcessing query...please wait...");			}
 		} while (!found);
 
-		query="";
 		try {
-			query = new String(Files.readAllBytes(Paths.get(inFile)));
+			// output the language that it appears to be written in 
+			Language language = detector.detect(Paths.get(inFile)).getLanguage();
+			if (detector.getQuerySize() == 0 || !detector.hasLetters()) {
+				System.out.println("\nThe language of the text could not be determined, it has no letters");
+			} else {
+				System.out.println("\nThe text appears to be written in.... " + language);
+			}
 		} catch (Exception e) {
 			System.out.println("Error - Runner");
 		}
 
-		exQuery.analyseQuery(query);
-
 		System.out.println("\nPress 1 to start again or 0 to exit: ");
 		userChoice = sc.nextInt();
 
@@ -158,4 +122,97 @@ public class Menu {
 			System.out.println("\nThe program has ended.");
 		}
 	}
+
+	/**
+	 * Returns the subject database for the dataset the user entered.
+	 * If the user entered a profile file it is loaded straight away.
+	 * If the dataset has a profile file beside it (dataset.profile) that is newer than the dataset and was built with the same
+	 * ProfileConfig, that is loaded instead.
+	 * Otherwise the dataset is parsed, the top kmers of each language are kept and the profile file is saved for next time.
+	 * 
+	 * @return
+	 */
+	private Database loadOrBuildDatabase() {
+		Path dataset = databaseFile.toPath();
+		Path snapshot = Paths.get(inFile + ".profile");
+
+		// the user entered a profile file
+		if (ProfileFile.isProfileFile(dataset)) {
+			Database db = loadProfiles(dataset);
+			if (db != null) {
+				return db;
+			}
+		}
+
+		// a profile file saved from an earlier run
+		File snapshotFile = snapshot.toFile();
+		if (snapshotFile.exists() && snapshotFile.lastModified() >= databaseFile.lastModified()) {
+			Database db = loadProfiles(snapshot);
+			if (db != null && db.getConfig().equals(config)) {
+				return db;
+			}
+			if (db != null) {
+				System.out.println(snapshot + " was built with " + db.getConfig() + " not " + config);
+			}
+		}
+
+		System.out.println("\nBuilding subject database...please wait...");
+		Database db = buildDatabase();
+
+		// save the profiles so the next run does not have to parse the dataset
+		try {
+			ProfileFile.save(db, snapshot);
+		} catch (IOException e) {
+			System.out.println("Could not save " + snapshot + " - " + e.getMessage());
+		}
+		return db;
+	}
+
+	/**
+	 * Loads the profiles from the file, returning null if it can not be used.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	private Database loadProfiles(Path file) {
+		try {
+			System.out.println("\nLoading subject database from " + file + "...");
+			return ProfileFile.load(file);
+		} catch (IOException e) {
+			System.out.println("Could not load " + file + " - " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Parses the dataset the user entered with parallel ChunkedParser tasks and one ExecuteQuery task per core,
+	 * then keeps the top kmers of each language.
+	 * 
+	 * @return
+	 */
+	private Database buildDatabase() {
+		// creates a new instance of Database
+		// -Dtraining.heavyHitters=n keeps only about the n most frequent kmers of each language while training
+		Database db = new Database(config);
+		db.setHeavyHitters(Integer.getInteger("training.heavyHitters", 0));
+		// -Dtraining.sketchWidth=n saves a count-min sketch with each language for incremental training, none by default
+		db.setSketchWidth(Integer.getInteger("training.sketchWidth", 0));
+
+		// readers feeding batches of lines to one ExecuteQuery per core, each with its own queue
+		IngestPipeline pipeline = new IngestPipeline(inFile);
+		pipeline.setConsumers(Workers.defaultCount());
+		pipeline.setReaders(Math.max(1, Workers.defaultCount() / 2));
+
+		try {
+			// waits until every task has finished
+			pipeline.run(db);
+		} catch (IOException | InterruptedException e1) {
+			e1.printStackTrace();
+		}
+
+		// get the most frequent kmers of each language
+		db.resize();
+
+		return db;
+	}
 }
@@ -0,0 +1,333 @@
+package ie.gmit.sw;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics class implements MetricsMXBean
+ * The counters of the hot paths, shared by every thread of the process through get().
+ *
+ * 		-lines parsed and lines per second of the current or last ingest (Parser, ChunkedParser)
+ * 		-depth of the ingest queues and the time spent blocked putting batches on them and taking batches off them
+ * 		-n-grams ingested for each language (ExecuteQuery.parse)
+ * 		-duration of the last Database.resize()
+ * 		-a latency histogram of every detection (ExecuteQuery.detect, StreamingDetector)
+ * 		-hits and misses of the DetectionCache
+ * 		-errors caught by the worker threads
+ *
+ * Every counter is a LongAdder and the n-grams of a line are counted once per line, not once per n-gram,
+ * so the metrics are cheap enough to leave on.
+ *
+ * register() publishes the metrics over JMX as ie.gmit.sw:type=Metrics.
+ * startDump(seconds, out) prints dump() every few seconds, Runner does this with -Ddetector.metrics.dump=seconds.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class Metrics implements MetricsMXBean {
+
+	private static final Metrics INSTANCE = new Metrics();
+
+	// name the MXBean is registered under
+	public static final String OBJECT_NAME = "ie.gmit.sw:type=Metrics";
+
+	// variables
+	private final LongAdder linesParsed = new LongAdder();
+	private final LongAdder putBlockedNanos = new LongAdder();
+	private final LongAdder takeBlockedNanos = new LongAdder();
+	private final LongAdder[] nGrams = new LongAdder[Language.values().length];
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder cacheTextHits = new LongAdder();
+	private final LongAdder cacheFingerprintHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+	private final LatencyHistogram detections = new LatencyHistogram();
+	private volatile long lastResizeNanos;
+	// start and end of the current or last ingest, end is 0 while it is running
+	private volatile long ingestStart;
+	private volatile long ingestEnd;
+	// queues of the running ingest, empty when nothing is running
+	private volatile List<? extends BlockingQueue<?>> queues = Collections.emptyList();
+	private ScheduledExecutorService dumper;
+
+	// constructor
+	private Metrics() {
+		super();
+		for (int i = 0; i < nGrams.length; i++) {
+			nGrams[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Returns the metrics of this process.
+	 *
+	 * @return
+	 */
+	public static Metrics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server, if they are not registered already.
+	 */
+	public static synchronized void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(INSTANCE, name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+		}
+	}
+
+	/**
+	 * Prints dump() to out every period seconds on a daemon thread, until stopDump() is called.
+	 *
+	 * @param period
+	 * @param out
+	 */
+	public synchronized void startDump(long period, PrintStream out) {
+		stopDump();
+		dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Metrics-dump");
+			t.setDaemon(true);
+			return t;
+		});
+		dumper.scheduleAtFixedRate(() -> out.println(dump()), period, period, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops the periodic dump.
+	 */
+	public synchronized void stopDump() {
+		if (dumper != null) {
+			dumper.shutdownNow();
+			dumper = null;
+		}
+	}
+
+	/**
+	 * Called by the IngestPipeline when it starts, so the queues can be watched.
+	 *
+	 * @param ingestQueues
+	 */
+	void ingestStarted(List<? extends BlockingQueue<?>> ingestQueues) {
+		queues = ingestQueues;
+		ingestEnd = 0;
+		ingestStart = System.nanoTime();
+	}
+
+	/**
+	 * Called by the IngestPipeline when every task has finished.
+	 */
+	void ingestFinished() {
+		ingestEnd = System.nanoTime();
+		queues = Collections.emptyList();
+	}
+
+	// recording methods, called from the hot paths
+	void addLines(int lines) {
+		linesParsed.add(lines);
+	}
+
+	void addPutBlocked(long nanos) {
+		putBlockedNanos.add(nanos);
+	}
+
+	void addTakeBlocked(long nanos) {
+		takeBlockedNanos.add(nanos);
+	}
+
+	void addNGrams(Language lang, long count) {
+		nGrams[lang.ordinal()].add(count);
+	}
+
+	void resized(long nanos) {
+		lastResizeNanos = nanos;
+	}
+
+	void detected(long nanos) {
+		detections.record(nanos);
+	}
+
+	void error() {
+		errors.increment();
+	}
+
+	void cacheHit(boolean fingerprint) {
+		(fingerprint ? cacheFingerprintHits : cacheTextHits).increment();
+	}
+
+	void cacheMiss() {
+		cacheMisses.increment();
+	}
+
+	// MXBean methods
+	@Override
+	public long getLinesParsed() {
+		return linesParsed.sum();
+	}
+
+	@Override
+	public double getLinesPerSecond() {
+		long start = ingestStart;
+		if (start == 0) {
+			return 0;
+		}
+		long end = ingestEnd == 0 ? System.nanoTime() : ingestEnd;
+		return end == start ? 0 : linesParsed.sum() * 1e9 / (end - start);
+	}
+
+	@Override
+	public int getQueueDepth() {
+		int depth = 0;
+		for (BlockingQueue<?> queue : queues) {
+			depth += queue.size();
+		}
+		return depth;
+	}
+
+	@Override
+	public long getQueuePutBlockedMillis() {
+		return putBlockedNanos.sum() / 1_000_000;
+	}
+
+	@Override
+	public long getQueueTakeBlockedMillis() {
+		return takeBlockedNanos.sum() / 1_000_000;
+	}
+
+	@Override
+	public long getNGramsIngested() {
+		long total = 0;
+		for (LongAdder count : nGrams) {
+			total += count.sum();
+		}
+		return total;
+	}
+
+	@Override
+	public Map<String, Long> getNGramsPerLanguage() {
+		Map<String, Long> perLanguage = new TreeMap<>();
+		for (Language lang : Language.values()) {
+			long count = nGrams[lang.ordinal()].sum();
+			if (count > 0) {
+				perLanguage.put(lang.name(), count);
+			}
+		}
+		return perLanguage;
+	}
+
+	@Override
+	public long getLastResizeMillis() {
+		return lastResizeNanos / 1_000_000;
+	}
+
+	@Override
+	public long getDetections() {
+		return detections.getCount();
+	}
+
+	@Override
+	public double getDetectionMeanMicros() {
+		return detections.getMeanMicros();
+	}
+
+	@Override
+	public long getDetectionP50Micros() {
+		return detections.percentile(50);
+	}
+
+	@Override
+	public long getDetectionP90Micros() {
+		return detections.percentile(90);
+	}
+
+	@Override
+	public long getDetectionP99Micros() {
+		return detections.percentile(99);
+	}
+
+	@Override
+	public long getCacheTextHits() {
+		return cacheTextHits.sum();
+	}
+
+	@Override
+	public long getCacheFingerprintHits() {
+		return cacheFingerprintHits.sum();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return cacheMisses.sum();
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hits = cacheTextHits.sum() + cacheFingerprintHits.sum();
+		long total = hits + cacheMisses.sum();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	/**
+	 * Sets every counter back to 0.
+	 */
+	@Override
+	public void reset() {
+		linesParsed.reset();
+		putBlockedNanos.reset();
+		takeBlockedNanos.reset();
+		for (LongAdder count : nGrams) {
+			count.reset();
+		}
+		errors.reset();
+		cacheTextHits.reset();
+		cacheFingerprintHits.reset();
+		cacheMisses.reset();
+		detections.reset();
+		lastResizeNanos = 0;
+		ingestStart = 0;
+		ingestEnd = 0;
+	}
+
+	/**
+	 * Returns the metrics as text, one metric per line.
+	 *
+	 * @return
+	 */
+	public String dump() {
+		StringBuilder sb = new StringBuilder("--- metrics ---\n");
+		sb.append(String.format("lines parsed        %d (%.0f lines/s)%n", getLinesParsed(), getLinesPerSecond()));
+		sb.append(String.format("queue depth         %d batches%n", getQueueDepth()));
+		sb.append(String.format("queue blocked       put %d ms, take %d ms%n", getQueuePutBlockedMillis(), getQueueTakeBlockedMillis()));
+		sb.append(String.format("n-grams ingested    %d in %d languages%n", getNGramsIngested(), getNGramsPerLanguage().size()));
+		sb.append(String.format("last resize         %d ms%n", getLastResizeMillis()));
+		sb.append(String.format("detections          %d, mean %.0f us, p50 %d us, p90 %d us, p99 %d us%n",
+				getDetections(), getDetectionMeanMicros(), getDetectionP50Micros(), getDetectionP90Micros(), getDetectionP99Micros()));
+		sb.append(String.format("detection cache     %d text hits, %d fingerprint hits, %d misses (%.1f%% hit rate)%n",
+				getCacheTextHits(), getCacheFingerprintHits(), getCacheMisses(), getCacheHitRate() * 100));
+		sb.append(String.format("errors              %d", getErrors()));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,53 @@
+package ie.gmit.sw;
+
+import java.util.Map;
+
+/**
+ * MetricsMXBean interface
+ * The management interface of Metrics, registered with the platform MBean server as ie.gmit.sw:type=Metrics
+ * so the detector can be watched with JConsole or any other JMX client.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public interface MetricsMXBean {
+
+	long getLinesParsed();
+
+	double getLinesPerSecond();
+
+	int getQueueDepth();
+
+	long getQueuePutBlockedMillis();
+
+	long getQueueTakeBlockedMillis();
+
+	long getNGramsIngested();
+
+	Map<String, Long> getNGramsPerLanguage();
+
+	long getLastResizeMillis();
+
+	long getDetections();
+
+	double getDetectionMeanMicros();
+
+	long getDetectionP50Micros();
+
+	long getDetectionP90Micros();
+
+	long getDetectionP99Micros();
+
+	long getCacheTextHits();
+
+	long getCacheFingerprintHits();
+
+	long getCacheMisses();
+
+	double getCacheHitRate();
+
+	long getErrors();
+
+	void reset();
+}
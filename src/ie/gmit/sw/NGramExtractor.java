@@ -0,0 +1,187 @@
+package ie.gmit.sw;
+
+/**
+ * NGramExtractor class
+ * Breaks text into kmers of size min to max and hashes each one straight from the characters,
+ * without creating a substring for every n-gram.
+ * The same extractor is used for training (ExecuteQuery.parse) and for detection (ExecuteQuery.analyseQuery)
+ * so that both sides always produce the same hash for the same kmer.
+ *
+ * extract(CharSequence text, Sink sink)
+ * 		-For every start position, extends a polynomial hash one character at a time
+ * 		 and passes the hash of each kmer of size min to max to the sink.
+ *
+ * hash(CharSequence s, HashWidth width)
+ * 		-Returns the hash of a single kmer. Gives the same value as extract() does for that kmer.
+ *
+ * The width of the hash is configurable.
+ * BITS_32 is the same value as String.hashCode(), so profiles match the original substring based hashing.
+ * BITS_64 uses a 64 bit polynomial hash which makes collisions between distinct kmers practically impossible.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class NGramExtractor {
+
+	// 64 bit FNV offset basis and prime, used as the seed and multiplier of the 64 bit polynomial
+	private static final long SEED_64 = 0xCBF29CE484222325L;
+	private static final long PRIME_64 = 0x100000001B3L;
+
+	/**
+	 * Width of the kmer hashes.
+	 */
+	public enum HashWidth {
+		BITS_32,
+		BITS_64
+	}
+
+	/**
+	 * Receives the hash of every kmer found by extract().
+	 */
+	public interface Sink {
+		void accept(long kmer);
+	}
+
+	// variables
+	private final int min;
+	private final int max;
+	private final HashWidth width;
+
+	// constructor
+	public NGramExtractor(int min, int max, HashWidth width) {
+		super();
+		if (min < 1 || max < min) {
+			throw new IllegalArgumentException("Invalid kmer range " + min + ".." + max);
+		}
+		this.min = min;
+		this.max = max;
+		this.width = width;
+	}
+
+	// accessor methods
+	public int getMin() {
+		return min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public HashWidth getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the number of kmers extract() passes to the sink for a text of the given length,
+	 * without hashing them.
+	 *
+	 * @param length
+	 * @return
+	 */
+	public long count(int length) {
+		long count = 0;
+		for (int n = min; n <= max && n <= length; n++) {
+			count += length - n + 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Passes the hash of every kmer of size min to max in the text to the sink.
+	 *
+	 * @param text
+	 * @param sink
+	 */
+	public void extract(CharSequence text, Sink sink) {
+		extract(text, 0, text.length(), sink);
+	}
+
+	/**
+	 * Passes the hash of every kmer of size min to max between from (inclusive) and to (exclusive) to the sink.
+	 * For each start position the hash is extended one character at a time, so a 4-gram costs
+	 * four multiply-adds and its 2-gram and 3-gram prefixes come for free.
+	 *
+	 * @param text
+	 * @param from
+	 * @param to
+	 * @param sink
+	 */
+	public void extract(CharSequence text, int from, int to, Sink sink) {
+		extract(text, from, to, to - min + 1, sink);
+	}
+
+	/**
+	 * Passes the hash of every kmer of size min to max that starts between from (inclusive) and lastStart (exclusive)
+	 * and ends before to (exclusive) to the sink.
+	 * Used when the text arrives in chunks - the kmers starting near the end of a chunk are left until
+	 * the next chunk has been read, so no kmer is cut short or counted twice.
+	 *
+	 * @param text
+	 * @param from
+	 * @param to
+	 * @param lastStart
+	 * @param sink
+	 */
+	public void extract(CharSequence text, int from, int to, int lastStart, Sink sink) {
+		lastStart = Math.min(lastStart, to - min + 1);
+
+		if (width == HashWidth.BITS_32) {
+			for (int j = from; j < lastStart; j++) {
+				int end = Math.min(j + max, to);
+				int h = 0;
+
+				for (int i = j; i < end; i++) {
+					// same recurrence as String.hashCode()
+					h = 31 * h + text.charAt(i);
+					if (i - j + 1 >= min) {
+						sink.accept(h);
+					}
+				}
+			}
+		} else {
+			for (int j = from; j < lastStart; j++) {
+				int end = Math.min(j + max, to);
+				long h = SEED_64;
+
+				for (int i = j; i < end; i++) {
+					h = (h + text.charAt(i)) * PRIME_64;
+					if (i - j + 1 >= min) {
+						sink.accept(mix(h));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the hash of a single kmer.
+	 *
+	 * @param s
+	 * @param width
+	 * @return
+	 */
+	public static long hash(CharSequence s, HashWidth width) {
+		if (width == HashWidth.BITS_32) {
+			int h = 0;
+			for (int i = 0; i < s.length(); i++) {
+				h = 31 * h + s.charAt(i);
+			}
+			return h;
+		}
+
+		long h = SEED_64;
+		for (int i = 0; i < s.length(); i++) {
+			h = (h + s.charAt(i)) * PRIME_64;
+		}
+		return mix(h);
+	}
+
+	// final avalanche step so that kmers differing only in the last character are far apart
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -3,11 +3,15 @@ package ie.gmit.sw;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 /**
  * Parser class implements Runnable 
- * It parses the language dataset and adds each line of text to the BlockingQueue.
+ * It parses the language dataset and adds batches of lines to the BlockingQueues of the consumers.
  * 
  * @author G00362383 - Michael Mulholland
  * @version 1.0
@@ -16,34 +20,45 @@ import java.util.concurrent.BlockingQueue;
  */
 public class Parser implements Runnable{
 
+	// the batch put on each queue once the dataset has been read
+	static final List<QueryFile> POISON = Collections.singletonList(new QueryFile("Poison", "Finished"));
+
 	// variables
-	private BlockingQueue<QueryFile> blockQue = null;
+	private List<BlockingQueue<List<QueryFile>>> queues = null;
 	private String file;
+	private int batchSize;
 
 	// constructer
-	public Parser(String file, BlockingQueue<QueryFile> queue) {
+	public Parser(String file, List<BlockingQueue<List<QueryFile>>> queues, int batchSize) {
 		super();
 		this.file = file;
-		this.blockQue = queue;
+		this.queues = queues;
+		this.batchSize = batchSize;
 	}
 
 	/**
 	 * parses the language dataset that is entered by the user. Splits each line of text at the '@' symbol, saving the language text and language
 	 * into a String Array. 
 	 * The language text and language name are then passed to a constructor in the QueryFile class to make new objects
-	 * which are then added to the BlockingQueue.  
-	 * Finally, to stop the BlockingQueue, it is poisoned.  
+	 * which are collected into batches of batchSize lines. 
+	 * Each full batch is put on the next queue in turn, so every consumer has its own queue and one queue operation moves many lines.
+	 * Finally, to stop the consumers, every queue is poisoned.  
 	 */
 	@Override
 	public void run() {
+		// the queue the next batch goes to
+		int next = 0;
 
 		try {
-			// BufferedReader to point at the file
-			BufferedReader  br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+			// BufferedReader to point at the file, the WiLI dataset is UTF-8
+			BufferedReader  br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
 
 			// set the String to nul
 			String line = null;
 
+			// the batch being filled
+			List<QueryFile> batch = new ArrayList<>(batchSize);
+
 			// while line is not equals to null
 			while ((line = br.readLine()) != null) {
 				// for each line split at the '@' symbol
@@ -54,21 +69,44 @@ public class Parser implements Runnable{
 					continue;
 				}		
 
-				// put text and language onto the Blocking Queue
-				blockQue.put(new QueryFile(record[0], record[1]));
+				// add text and language to the batch
+				batch.add(new QueryFile(record[0], record[1]));
+
+				// put a full batch onto the next Blocking Queue
+				if (batch.size() == batchSize) {
+					put(queues.get(next), batch);
+					next = (next + 1) % queues.size();
+					batch = new ArrayList<>(batchSize);
+				}
+			}
+
+			// put the last part batch
+			if (!batch.isEmpty()) {
+				put(queues.get(next), batch);
 			}
 
 			// close BufferedReader
 			br.close();
 		} catch (Exception e) {
+			Metrics.get().error();
 			e.printStackTrace();
 		} finally {
 			try {
-				// Poison the Blocking Queue
-				blockQue.put(new QueryFile("Poison", "Finished"));
+				// Poison every Blocking Queue, one for each consumer
+				for (BlockingQueue<List<QueryFile>> queue : queues) {
+					queue.put(POISON);
+				}
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
 		}
 	}
+
+	// puts the batch on the queue, counting its lines and the time spent waiting for room
+	private static void put(BlockingQueue<List<QueryFile>> queue, List<QueryFile> batch) throws InterruptedException {
+		long start = System.nanoTime();
+		queue.put(batch);
+		Metrics.get().addPutBlocked(System.nanoTime() - start);
+		Metrics.get().addLines(batch.size());
+	}
 }
@@ -0,0 +1,107 @@
+package ie.gmit.sw;
+
+import java.util.Arrays;
+
+/**
+ * ProfileAccumulator class
+ * Private per-worker kmer counts for every language.
+ * Each ExecuteQuery thread counts into its own accumulator without any locking,
+ * and the counts are folded into the shared Database once the thread has taken the poison.
+ *
+ * add(long kmer, Language lang)
+ * 		-Increments the frequency of the kmer in the table for the language.
+ *
+ * addScripts(CharSequence text, Language lang)
+ * 		-Counts the Unicode scripts of the letters of a line of training text.
+ *
+ * getTable(Language lang)
+ * 		-Returns the table for the language, or null if nothing has been counted for it.
+ *
+ * This class is not thread safe, it is only ever used by the thread that owns it.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class ProfileAccumulator {
+
+	// one table per language, indexed by the language ordinal
+	private final KmerTable[] tables = new KmerTable[Language.values().length];
+
+	// script counts per language, indexed by the language ordinal
+	private final int[][] scripts = new int[Language.values().length][];
+
+	/**
+	 * Increments the frequency of the kmer for the language.
+	 *
+	 * @param kmer
+	 * @param lang
+	 */
+	public void add(long kmer, Language lang) {
+		KmerTable table = tables[lang.ordinal()];
+
+		// create the table the first time the language is seen
+		if (table == null) {
+			table = new KmerTable(1024);
+			tables[lang.ordinal()] = table;
+		}
+		table.increment(kmer);
+	}
+
+	/**
+	 * Counts the Unicode scripts of the letters of the text for the language.
+	 *
+	 * @param text
+	 * @param lang
+	 */
+	public void addScripts(CharSequence text, Language lang) {
+		if (scripts[lang.ordinal()] == null) {
+			scripts[lang.ordinal()] = new int[ScriptFilter.SCRIPTS];
+		}
+		ScriptFilter.count(text, scripts[lang.ordinal()]);
+	}
+
+	/**
+	 * Returns the script counts for the language, or null if nothing has been counted for it.
+	 *
+	 * @param lang
+	 * @return
+	 */
+	public int[] getScripts(Language lang) {
+		return scripts[lang.ordinal()];
+	}
+
+	/**
+	 * Returns the table for the language, or null if nothing has been counted for it.
+	 *
+	 * @param lang
+	 * @return
+	 */
+	public KmerTable getTable(Language lang) {
+		return tables[lang.ordinal()];
+	}
+
+	/**
+	 * Empties every table but keeps their arrays, so the accumulator can be merged after every batch without allocating.
+	 */
+	public void reset() {
+		for (int i = 0; i < tables.length; i++) {
+			if (tables[i] != null) {
+				tables[i].clear();
+			}
+			if (scripts[i] != null) {
+				Arrays.fill(scripts[i], 0);
+			}
+		}
+	}
+
+	/**
+	 * Drops every table so the memory can be reclaimed after a merge.
+	 */
+	public void clear() {
+		for (int i = 0; i < tables.length; i++) {
+			tables[i] = null;
+			scripts[i] = null;
+		}
+	}
+}
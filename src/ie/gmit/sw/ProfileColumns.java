@@ -0,0 +1,254 @@
+package ie.gmit.sw;
+
+import java.util.Arrays;
+
+/**
+ * ProfileColumns class
+ * The ranked profiles of every language frozen into one set of parallel primitive arrays (struct of arrays),
+ * instead of one RankedProfile with its own rank table per language.
+ *
+ * 		-kmers holds the kmers of every profile, one language after the other. Language l is at offsets[l] to offsets[l + 1]
+ * 		 and its kmers are sorted by value, so a kmer is found with a binary search over a few cache lines.
+ * 		-ranks[i] is the rank of kmers[i] in its language.
+ *
+ * getRank(int l, long kmer)
+ * 		-Returns the rank of the kmer in the profile of language l or 0 if the kmer is not in the profile.
+ *
+ * sort(long[] kmers, int[] ranks, int n)
+ * 		-Sorts the kmers of a query by value, keeping each rank with its kmer.
+ *
+ * distance(int l, long[] kmers, int[] ranks, int n)
+ * 		-Returns the out of place distance of a sorted query to language l with a merge join:
+ * 		 one pass over the query and the profile side by side, advancing whichever has the smaller kmer.
+ * 		-Two sequential scans of primitive arrays, with no hashing and no random memory access,
+ * 		 and the comparisons are written so the JIT can use conditional moves instead of unpredictable branches.
+ *
+ * 235 profiles of 300 kmers take three arrays and about 850 KB, with no object per kmer or per language.
+ * The columns are immutable once built and can be shared by any number of threads.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class ProfileColumns {
+
+	// variables
+	// the languages of the columns, a language is referred to by its position in this array
+	private final Language[] languages;
+	// the kmers of language l are at offsets[l] to offsets[l + 1]
+	private final int[] offsets;
+	private final long[] kmers;
+	private final int[] ranks;
+
+	/**
+	 * Freezes the ranked profiles of the languages.
+	 *
+	 * @param languages
+	 * @param profiles
+	 */
+	public ProfileColumns(Language[] languages, RankedProfile[] profiles) {
+		super();
+		this.languages = languages.clone();
+		this.offsets = new int[languages.length + 1];
+		for (int l = 0; l < profiles.length; l++) {
+			offsets[l + 1] = offsets[l] + profiles[l].size();
+		}
+		this.kmers = new long[offsets[languages.length]];
+		this.ranks = new int[kmers.length];
+
+		// kmer to rank of the language being copied, reused for every language
+		KmerTable lookup = new KmerTable();
+		for (int l = 0; l < profiles.length; l++) {
+			RankedProfile profile = profiles[l];
+			lookup.clear();
+			for (int rank = 1; rank <= profile.size(); rank++) {
+				kmers[offsets[l] + rank - 1] = profile.getKmer(rank);
+				lookup.add(profile.getKmer(rank), rank);
+			}
+
+			// sort the kmers of the language and look their ranks up again
+			Arrays.sort(kmers, offsets[l], offsets[l + 1]);
+			for (int i = offsets[l]; i < offsets[l + 1]; i++) {
+				ranks[i] = lookup.get(kmers[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the rank of the kmer in the profile of language l, or 0 if the kmer is not in the profile.
+	 *
+	 * @param l
+	 * @param kmer
+	 * @return
+	 */
+	public int getRank(int l, long kmer) {
+		int i = Arrays.binarySearch(kmers, offsets[l], offsets[l + 1], kmer);
+		return i < 0 ? 0 : ranks[i];
+	}
+
+	/**
+	 * Computes the out of place distance of the query to language l.
+	 * A query kmer that is not in the profile adds the profile size plus 1,
+	 * a query kmer that is in the profile adds the subject rank minus the query rank.
+	 * The query kmers must be sorted by value (see sort()). The query and the profile must have at most
+	 * ProfileConfig.MAX_PROFILE_SIZE kmers, so the distance fits in an int.
+	 *
+	 * @param l
+	 * @param queryKmers
+	 * @param queryRanks
+	 * @param n the number of query kmers
+	 * @return
+	 */
+	public int distance(int l, long[] queryKmers, int[] queryRanks, int n) {
+		int i = 0;
+		int j = offsets[l];
+		int end = offsets[l + 1];
+		int found = 0;
+		int distance = 0;
+
+		while (i < n && j < end) {
+			long q = queryKmers[i];
+			long s = kmers[j];
+			if (q == s) {
+				distance += ranks[j] - queryRanks[i];
+				found++;
+			}
+			// advance the side with the smaller kmer, or both when they are equal
+			i += q <= s ? 1 : 0;
+			j += q >= s ? 1 : 0;
+		}
+
+		// every query kmer that was not found is the furthest it can be
+		return distance + (n - found) * (end - offsets[l] + 1);
+	}
+
+	/**
+	 * Sorts the first n query kmers by value, the order distance() needs, moving each rank with its kmer.
+	 *
+	 * @param queryKmers
+	 * @param queryRanks
+	 * @param n
+	 */
+	public static void sort(long[] queryKmers, int[] queryRanks, int n) {
+		sort(queryKmers, queryRanks, 0, n - 1);
+	}
+
+	// quicksort of the parallel arrays between lo and hi inclusive, insertion sort for short ranges
+	private static void sort(long[] k, int[] r, int lo, int hi) {
+		while (hi - lo > 16) {
+			// median of three as the pivot
+			int mid = (lo + hi) >>> 1;
+			if (k[mid] < k[lo]) {
+				swap(k, r, mid, lo);
+			}
+			if (k[hi] < k[lo]) {
+				swap(k, r, hi, lo);
+			}
+			if (k[hi] < k[mid]) {
+				swap(k, r, hi, mid);
+			}
+			long pivot = k[mid];
+
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (k[i] < pivot) {
+					i++;
+				}
+				while (k[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(k, r, i++, j--);
+				}
+			}
+
+			// recurse into the smaller half and loop on the larger one
+			if (j - lo < hi - i) {
+				sort(k, r, lo, j);
+				lo = i;
+			} else {
+				sort(k, r, i, hi);
+				hi = j;
+			}
+		}
+
+		for (int i = lo + 1; i <= hi; i++) {
+			long kmer = k[i];
+			int rank = r[i];
+			int j = i - 1;
+			while (j >= lo && k[j] > kmer) {
+				k[j + 1] = k[j];
+				r[j + 1] = r[j];
+				j--;
+			}
+			k[j + 1] = kmer;
+			r[j + 1] = rank;
+		}
+	}
+
+	private static void swap(long[] k, int[] r, int i, int j) {
+		long kmer = k[i];
+		k[i] = k[j];
+		k[j] = kmer;
+
+		int rank = r[i];
+		r[i] = r[j];
+		r[j] = rank;
+	}
+
+	/**
+	 * Returns the language at the given position of the columns.
+	 *
+	 * @param l
+	 * @return
+	 */
+	public Language getLanguage(int l) {
+		return languages[l];
+	}
+
+	/**
+	 * Returns the number of kmers in the profile of language l.
+	 *
+	 * @param l
+	 * @return
+	 */
+	public int getProfileSize(int l) {
+		return offsets[l + 1] - offsets[l];
+	}
+
+	/**
+	 * Returns the kmer at position i of the kmer column, the kmers of language l are at getStart(l) to getStart(l + 1).
+	 *
+	 * @param i
+	 * @return
+	 */
+	public long getKmer(int i) {
+		return kmers[i];
+	}
+
+	/**
+	 * Returns the rank of the kmer at position i of the kmer column.
+	 *
+	 * @param i
+	 * @return
+	 */
+	public int getRankAt(int i) {
+		return ranks[i];
+	}
+
+	/**
+	 * Returns the position of the first kmer of language l in the kmer column, getStart(size()) is the total number of kmers.
+	 *
+	 * @param l
+	 * @return
+	 */
+	public int getStart(int l) {
+		return offsets[l];
+	}
+
+	// accessor method
+	public int size() {
+		return languages.length;
+	}
+}
@@ -0,0 +1,117 @@
+package ie.gmit.sw;
+
+/**
+ * ProfileConfig class
+ * The settings that decide what a language profile is. Training (ExecuteQuery.parse), query profiling
+ * (ExecuteQuery.detect and StreamingDetector) and the ProfileFile all take them from the Database,
+ * so the training and query profiles can not be built differently.
+ *
+ * 		-minN, maxN - the sizes of the kmers, every kmer of size minN to maxN is counted
+ * 		-profileSize - the number of most frequent kmers kept for each language and for each query, at most MAX_PROFILE_SIZE
+ * 		 so that an out of place distance, at most profileSize * (profileSize + 1), fits in an int
+ * 		-hashWidth - the width of the kmer hashes (see NGramExtractor)
+ *
+ * DEFAULT is kmers of size 2 to 4, 300 kmers per profile and 64 bit hashes.
+ * fromSystemProperties() lets the settings be changed without code changes, for example
+ * 		java -Dprofile.minN=1 -Dprofile.maxN=3 -Dprofile.size=500 -Dprofile.hash=32 ie.gmit.sw.Runner
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class ProfileConfig {
+
+	public static final ProfileConfig DEFAULT = new ProfileConfig(2, 4, 300, NGramExtractor.HashWidth.BITS_64);
+
+	// the largest profile size whose distances fit in an int, 46340 * 46341 is just under Integer.MAX_VALUE
+	public static final int MAX_PROFILE_SIZE = 46340;
+
+	// variables
+	private final int minN;
+	private final int maxN;
+	private final int profileSize;
+	private final NGramExtractor.HashWidth hashWidth;
+
+	// constructor
+	public ProfileConfig(int minN, int maxN, int profileSize, NGramExtractor.HashWidth hashWidth) {
+		super();
+		if (minN < 1 || maxN < minN) {
+			throw new IllegalArgumentException("Invalid kmer range " + minN + ".." + maxN);
+		}
+		if (profileSize < 1 || profileSize > MAX_PROFILE_SIZE) {
+			throw new IllegalArgumentException("profileSize must be 1 to " + MAX_PROFILE_SIZE + ", not " + profileSize);
+		}
+		this.minN = minN;
+		this.maxN = maxN;
+		this.profileSize = profileSize;
+		this.hashWidth = hashWidth;
+	}
+
+	/**
+	 * Returns DEFAULT with any of the profile.minN, profile.maxN, profile.size and profile.hash (32 or 64)
+	 * system properties that are set.
+	 *
+	 * @return
+	 */
+	public static ProfileConfig fromSystemProperties() {
+		int minN = Integer.getInteger("profile.minN", DEFAULT.minN);
+		int maxN = Integer.getInteger("profile.maxN", DEFAULT.maxN);
+		int profileSize = Integer.getInteger("profile.size", DEFAULT.profileSize);
+		NGramExtractor.HashWidth hashWidth = DEFAULT.hashWidth;
+
+		String hash = System.getProperty("profile.hash");
+		if ("32".equals(hash)) {
+			hashWidth = NGramExtractor.HashWidth.BITS_32;
+		} else if ("64".equals(hash)) {
+			hashWidth = NGramExtractor.HashWidth.BITS_64;
+		} else if (hash != null) {
+			throw new IllegalArgumentException("profile.hash must be 32 or 64, not " + hash);
+		}
+		return new ProfileConfig(minN, maxN, profileSize, hashWidth);
+	}
+
+	/**
+	 * Returns an extractor for the kmers of this configuration.
+	 *
+	 * @return
+	 */
+	public NGramExtractor newExtractor() {
+		return new NGramExtractor(minN, maxN, hashWidth);
+	}
+
+	// accessor methods
+	public int getMinN() {
+		return minN;
+	}
+
+	public int getMaxN() {
+		return maxN;
+	}
+
+	public int getProfileSize() {
+		return profileSize;
+	}
+
+	public NGramExtractor.HashWidth getHashWidth() {
+		return hashWidth;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof ProfileConfig)) {
+			return false;
+		}
+		ProfileConfig other = (ProfileConfig) o;
+		return minN == other.minN && maxN == other.maxN && profileSize == other.profileSize && hashWidth == other.hashWidth;
+	}
+
+	@Override
+	public int hashCode() {
+		return ((minN * 31 + maxN) * 31 + profileSize) * 31 + hashWidth.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "[n=" + minN + ".." + maxN + ", profileSize=" + profileSize + ", hash=" + hashWidth + "]";
+	}
+}
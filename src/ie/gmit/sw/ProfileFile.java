@@ -0,0 +1,229 @@
+package ie.gmit.sw;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * ProfileFile class
+ * Saves the ranked language profiles of a Database to a compact binary file and loads them back,
+ * so the WiLI dataset only has to be parsed once.
+ *
+ * save(Database db, Path file)
+ * 		-Writes the header and every RankedProfile of the database after resize() has been called.
+ *
+ * load(Path file)
+ * 		-Memory maps the file with a FileChannel and rebuilds the Database from it, with the ProfileConfig it was built with.
+ * 		-The CountMinSketches are skipped, detection does not use them. load(file, true) also loads them for incremental training.
+ * 		-Throws an IOException if the file is not a profile file or has a different version.
+ *
+ * File layout (big endian):
+ * 		int magic, int version, int hash width, int min kmer size, int max kmer size, int profile size, int number of languages
+ * 		for each language: short name length, name bytes (UTF-8), int profile size,
+ * 		long[profile size] kmers in rank order, int[profile size] frequencies,
+ * 		short number of scripts, then for each script: short name length, name bytes (the Character.UnicodeScript name).
+ * 		The number of scripts is -1 if the scripts of the language are not known.
+ * 		int sketch depth, int sketch width, then int[depth * width] counters row by row, the CountMinSketch of the
+ * 		counts of the language for incremental training (see Database.setSketchWidth()). The depth is 0 if there is no sketch.
+ * Files with any version other than VERSION are rejected with an IOException.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class ProfileFile {
+
+	// "LDPF" - language detector profile file
+	private static final int MAGIC = 0x4C445046;
+	private static final int VERSION = 4;
+
+	private ProfileFile() {
+	}
+
+	/**
+	 * Writes the ranked profiles of the database to the file.
+	 * The file is written to a temporary file first and then moved into place,
+	 * so a half written file is never loaded.
+	 *
+	 * @param db
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void save(Database db, Path file) throws IOException {
+		ProfileConfig config = db.getConfig();
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			// header
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(config.getHashWidth().ordinal());
+			out.writeInt(config.getMinN());
+			out.writeInt(config.getMaxN());
+			out.writeInt(config.getProfileSize());
+			out.writeInt(db.getLanguages().size());
+
+			// one block per language
+			for (Language lang : db.getLanguages()) {
+				RankedProfile profile = db.getProfile(lang);
+				byte[] name = lang.name().getBytes(StandardCharsets.UTF_8);
+
+				out.writeShort(name.length);
+				out.write(name);
+				out.writeInt(profile.size());
+
+				for (int rank = 1; rank <= profile.size(); rank++) {
+					out.writeLong(profile.getKmer(rank));
+				}
+				for (int rank = 1; rank <= profile.size(); rank++) {
+					out.writeInt(profile.getFrequency(rank));
+				}
+
+				// the scripts the language is written in, -1 if they are not known
+				BitSet scripts = db.getScripts(lang);
+				if (scripts == null) {
+					out.writeShort(-1);
+				} else {
+					out.writeShort(scripts.cardinality());
+					for (int i = scripts.nextSetBit(0); i >= 0; i = scripts.nextSetBit(i + 1)) {
+						byte[] script = Character.UnicodeScript.values()[i].name().getBytes(StandardCharsets.UTF_8);
+						out.writeShort(script.length);
+						out.write(script);
+					}
+				}
+
+				// the sketch of the counts of the language, depth 0 if there is none
+				CountMinSketch sketch = db.getSketch(lang);
+				if (sketch == null) {
+					out.writeInt(0);
+					out.writeInt(0);
+				} else {
+					out.writeInt(sketch.getDepth());
+					out.writeInt(sketch.getWidth());
+					for (int row = 0; row < sketch.getDepth(); row++) {
+						for (int counter : sketch.getRow(row)) {
+							out.writeInt(counter);
+						}
+					}
+				}
+			}
+		}
+
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Memory maps the file and rebuilds the Database from it, without the sketches.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static Database load(Path file) throws IOException {
+		return load(file, false);
+	}
+
+	/**
+	 * Memory maps the file and rebuilds the Database from it.
+	 * The sketches are only needed to add samples, so they are only copied onto the heap if sketches is true.
+	 *
+	 * @param file
+	 * @param sketches
+	 * @return
+	 * @throws IOException
+	 */
+	public static Database load(Path file, boolean sketches) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			try {
+				// check the header
+				if (buf.getInt() != MAGIC) {
+					throw new IOException(file + " is not a profile file");
+				}
+				int version = buf.getInt();
+				if (version != VERSION) {
+					throw new IOException("Unsupported profile file version " + version + " in " + file + ", expected version " + VERSION);
+				}
+				NGramExtractor.HashWidth width = NGramExtractor.HashWidth.values()[buf.getInt()];
+				ProfileConfig config = new ProfileConfig(buf.getInt(), buf.getInt(), buf.getInt(), width);
+
+				Database db = new Database(config);
+				int languages = buf.getInt();
+
+				// read each language block
+				for (int i = 0; i < languages; i++) {
+					byte[] name = new byte[buf.getShort()];
+					buf.get(name);
+					Language lang = Language.valueOf(new String(name, StandardCharsets.UTF_8));
+
+					int n = buf.getInt();
+					long[] kmers = new long[n];
+					int[] frequencies = new int[n];
+
+					// bulk copy the arrays out of the mapped file
+					buf.asLongBuffer().get(kmers);
+					buf.position(buf.position() + n * Long.BYTES);
+					buf.asIntBuffer().get(frequencies);
+					buf.position(buf.position() + n * Integer.BYTES);
+
+					db.putProfile(lang, new RankedProfile(kmers, frequencies));
+
+					// unknown scripts stay null, so the language is a candidate for every query
+					int count = buf.getShort();
+					if (count >= 0) {
+						BitSet scripts = new BitSet();
+						for (int s = 0; s < count; s++) {
+							byte[] script = new byte[buf.getShort()];
+							buf.get(script);
+							scripts.set(Character.UnicodeScript.valueOf(new String(script, StandardCharsets.UTF_8)).ordinal());
+						}
+						db.putScripts(lang, scripts);
+					}
+
+					// bulk copy the sketch rows out of the mapped file, or step over them
+					int depth = buf.getInt();
+					int sketchWidth = buf.getInt();
+					if (depth > 0 && !sketches) {
+						buf.position(buf.position() + depth * sketchWidth * Integer.BYTES);
+					} else if (depth > 0) {
+						CountMinSketch sketch = new CountMinSketch(depth, sketchWidth);
+						for (int row = 0; row < depth; row++) {
+							buf.asIntBuffer().get(sketch.getRow(row));
+							buf.position(buf.position() + sketchWidth * Integer.BYTES);
+						}
+						db.putSketch(lang, sketch);
+					}
+				}
+				return db;
+			} catch (RuntimeException e) {
+				// a truncated file or an unknown language name
+				throw new IOException("Corrupt profile file " + file, e);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the file starts with the profile file magic number.
+	 *
+	 * @param file
+	 * @return
+	 */
+	public static boolean isProfileFile(Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+			return channel.read(magic) == Integer.BYTES && magic.getInt(0) == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
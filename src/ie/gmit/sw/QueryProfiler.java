@@ -0,0 +1,209 @@
+package ie.gmit.sw;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * QueryProfiler class
+ * Builds the ranked profile of a query over primitive arrays, with the ProfileConfig of the database it was created for.
+ *
+ * count(CharSequence text)
+ * 		-Counts the kmers of the text in a reused KmerTable and the Unicode scripts of its letters.
+ *
+ * profile()
+ * 		-Ranks the profileSize most frequent kmers with TopK into an immutable RankedProfile, most frequent first.
+ * 		 Kmers with the same frequency are ordered by kmer value, so the profile does not depend on hash iteration order.
+ * 		 The profile is built once and then scored against every language.
+ *
+ * reset()
+ * 		-Empties the counts, keeping the allocated arrays for the next query.
+ *
+ * uncountKmers() and uncountScripts()
+ * 		-Take counted text back out again, so a profile can follow a window sliding over a text (see LanguageSegmenter)
+ * 		 by counting the characters that enter the window and uncounting the ones that leave it.
+ *
+ * setMaxKmers(int maxKmers)
+ * 		-Bounds the memory of the counts for inputs of any size. Once more than maxKmers distinct kmers are counted,
+ * 		 only the maxKmers / 2 most frequent are kept, picked with a TopK so ties do not empty the table (lossy counting).
+ * 		 The kmers of a profile are far more frequent than the ones dropped, so the profile hardly changes.
+ * 		 Counts are only pruned at the end of a count() or countKmers() call, so the table holds at most
+ * 		 maxKmers plus the kmers of one call. A pruned profile can not be uncounted.
+ *
+ * This class is not thread safe, each thread needs its own QueryProfiler.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class QueryProfiler {
+
+	// variables
+	private final NGramExtractor extractor;
+	private final int profileSize;
+	private final KmerTable counts;
+	// counts each kmer hash passed to it by the extractor
+	private final NGramExtractor.Sink sink;
+	// takes each kmer hash passed to it back out of the counts
+	private final NGramExtractor.Sink uncountSink;
+	private final int[] scripts = new int[ScriptFilter.SCRIPTS];
+	// scripts of the text being uncounted
+	private final int[] uncounted = new int[ScriptFilter.SCRIPTS];
+	// distinct kmers counted before the least frequent are pruned, 0 keeps every kmer
+	private int maxKmers = 0;
+
+	// constructors
+	public QueryProfiler(Database db) {
+		this(db, 4096);
+	}
+
+	/**
+	 * Creates a profiler whose table starts with room for about expectedKmers distinct kmers.
+	 * profile() visits every slot of the table, so a profiler for short texts should have a small table.
+	 *
+	 * @param db
+	 * @param expectedKmers
+	 */
+	public QueryProfiler(Database db, int expectedKmers) {
+		super();
+		this.extractor = db.newExtractor();
+		this.profileSize = db.getConfig().getProfileSize();
+		this.counts = new KmerTable(expectedKmers);
+		this.sink = counts::increment;
+		this.uncountSink = counts::decrement;
+	}
+
+	/**
+	 * Empties the kmer and script counts.
+	 */
+	public void reset() {
+		counts.clear();
+		Arrays.fill(scripts, 0);
+	}
+
+	/**
+	 * Counts the kmers and the scripts of the text.
+	 *
+	 * @param text
+	 */
+	public void count(CharSequence text) {
+		extractor.extract(text, sink);
+		ScriptFilter.count(text, scripts);
+		checkSize();
+	}
+
+	/**
+	 * Counts the kmers that start between from and lastStart and end before to, for text that arrives in chunks
+	 * (see NGramExtractor.extract()). Scripts are not counted.
+	 *
+	 * @param text
+	 * @param from
+	 * @param to
+	 * @param lastStart
+	 */
+	public void countKmers(CharSequence text, int from, int to, int lastStart) {
+		extractor.extract(text, from, to, lastStart, sink);
+		checkSize();
+	}
+
+	/**
+	 * Counts the scripts of the letters between from and to.
+	 *
+	 * @param text
+	 * @param from
+	 * @param to
+	 */
+	public void countScripts(CharSequence text, int from, int to) {
+		ScriptFilter.count(text, from, to, scripts);
+	}
+
+	/**
+	 * Takes back the kmers that start between from and lastStart and end before to, which must have been counted before.
+	 *
+	 * @param text
+	 * @param from
+	 * @param to
+	 * @param lastStart
+	 */
+	public void uncountKmers(CharSequence text, int from, int to, int lastStart) {
+		if (maxKmers > 0) {
+			throw new IllegalStateException("Pruned counts can not be uncounted");
+		}
+		extractor.extract(text, from, to, lastStart, uncountSink);
+	}
+
+	/**
+	 * Takes back the scripts of the letters between from and to, which must have been counted before.
+	 *
+	 * @param text
+	 * @param from
+	 * @param to
+	 */
+	public void uncountScripts(CharSequence text, int from, int to) {
+		Arrays.fill(uncounted, 0);
+		ScriptFilter.count(text, from, to, uncounted);
+		for (int s = 0; s < scripts.length; s++) {
+			scripts[s] -= uncounted[s];
+		}
+	}
+
+	/**
+	 * Ranks the most frequent kmers counted so far into an immutable profile.
+	 *
+	 * @return
+	 */
+	public RankedProfile profile() {
+		TopK top = new TopK(profileSize);
+		counts.forEach(top);
+		return top.toProfile();
+	}
+
+	/**
+	 * Returns the main scripts of the letters counted so far (see ScriptFilter.QUERY_SHARE).
+	 *
+	 * @return
+	 */
+	public BitSet scripts() {
+		return ScriptFilter.scripts(scripts, ScriptFilter.QUERY_SHARE);
+	}
+
+	/**
+	 * Sets the number of distinct kmers counted before the least frequent are pruned, 0 (the default) keeps every kmer.
+	 *
+	 * @param maxKmers
+	 */
+	public void setMaxKmers(int maxKmers) {
+		if (maxKmers < 0) {
+			throw new IllegalArgumentException("maxKmers must not be negative");
+		}
+		this.maxKmers = maxKmers;
+	}
+
+	// accessor methods
+	public int getMaxKmers() {
+		return maxKmers;
+	}
+
+	public int getMaxN() {
+		return extractor.getMax();
+	}
+
+	// prunes the counts if there are too many distinct kmers
+	private void checkSize() {
+		if (maxKmers > 0 && counts.size() > maxKmers) {
+			prune();
+		}
+	}
+
+	// keeps only the maxKmers / 2 most frequent kmers, ties broken the same way as the profile
+	private void prune() {
+		TopK top = new TopK(maxKmers / 2);
+		counts.forEach(top);
+		RankedProfile kept = top.toProfile();
+
+		// the arrays of the table are kept, so it does not grow again until the next prune
+		counts.clear();
+		for (int rank = 1; rank <= kept.size(); rank++) {
+			counts.add(kept.getKmer(rank), kept.getFrequency(rank));
+		}
+	}
+}
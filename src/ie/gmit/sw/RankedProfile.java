@@ -0,0 +1,87 @@
+package ie.gmit.sw;
+
+/**
+ * RankedProfile class
+ * The compact, immutable ranked form of a language profile that is produced by Database.getTop().
+ * The kmers are stored in rank order, so the kmer at index 0 has rank 1 (the most frequent kmer).
+ *
+ * getRank(long kmer)
+ * 		-Returns the rank of the kmer or 0 if the kmer is not in the profile.
+ *
+ * getKmer(int rank)
+ * 		-Returns the kmer with the given rank.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class RankedProfile {
+
+	// variables
+	private final long[] kmers;
+	private final int[] frequencies;
+	// maps each kmer to its rank, built by the first getRank() so query profiles, which are never looked up, skip it
+	private volatile KmerTable ranks;
+
+	/**
+	 * Creates a profile from kmers that are already in rank order.
+	 * The arrays are owned by the profile after this call.
+	 *
+	 * @param kmers
+	 * @param frequencies
+	 */
+	public RankedProfile(long[] kmers, int[] frequencies) {
+		super();
+		this.kmers = kmers;
+		this.frequencies = frequencies;
+	}
+
+	/**
+	 * Returns the rank of the kmer or 0 if the kmer is not in the profile.
+	 *
+	 * @param kmer
+	 * @return
+	 */
+	public int getRank(long kmer) {
+		KmerTable table = ranks;
+		if (table == null) {
+			// two threads may both build it, they build the same table
+			table = new KmerTable(kmers.length);
+			for (int i = 0; i < kmers.length; i++) {
+				table.add(kmers[i], i + 1);
+			}
+			ranks = table;
+		}
+		return table.get(kmer);
+	}
+
+	/**
+	 * Returns the kmer with the given rank. Ranks start at 1.
+	 *
+	 * @param rank
+	 * @return
+	 */
+	public long getKmer(int rank) {
+		return kmers[rank - 1];
+	}
+
+	/**
+	 * Returns the training frequency of the kmer with the given rank.
+	 *
+	 * @param rank
+	 * @return
+	 */
+	public int getFrequency(int rank) {
+		return frequencies[rank - 1];
+	}
+
+	// accessor method
+	public int size() {
+		return kmers.length;
+	}
+
+	@Override
+	public String toString() {
+		return "[size=" + kmers.length + "]";
+	}
+}
@@ -1,9 +1,22 @@
 package ie.gmit.sw;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Runner class to start the program.
  * Calls the menu method in the Menu class.
  * 
+ * With the arguments serve &lt;profile file&gt; [port] [threads] it starts the DetectionServer instead.
+ * The profile file is the dataset.profile file the Menu saves beside the dataset.
+ * With the arguments train &lt;profile file&gt; &lt;records file&gt; it adds the text@label records to the profile file (see IncrementalTrainer).
+ * With the arguments segment &lt;profile file&gt; &lt;query file&gt; [window] [step] it prints the language spans of a mixed language file
+ * (see LanguageSegmenter).
+ * 
+ * The Metrics are always published over JMX. With -Ddetector.metrics.dump=seconds they are also printed every few seconds.
+ * 
  * @author G00362383 - Michael Mulholland
  * @version 1.0
  * @since Oxygen.3a Release (4.7.3a)
@@ -11,6 +24,58 @@ package ie.gmit.sw;
 public class Runner {
 	
 	public static void main(String[] args) throws Throwable  {
-		new Menu().menu();
+		Metrics.register();
+		long dump = Long.getLong("detector.metrics.dump", 0);
+		if (dump > 0) {
+			Metrics.get().startDump(dump, System.out);
+		}
+
+		if (args.length >= 2 && args[0].equals("serve")) {
+			serve(args);
+		} else if (args.length >= 3 && args[0].equals("train")) {
+			train(args);
+		} else if (args.length >= 3 && args[0].equals("segment")) {
+			segment(args);
+		} else {
+			new Menu().menu();
+		}
+	}
+
+	// loads the profiles once and answers detection requests until the process is stopped
+	private static void serve(String[] args) throws Exception {
+		int port = args.length > 2 ? Integer.parseInt(args[2]) : 8080;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Workers.defaultCount();
+
+		Database db = ProfileFile.load(Paths.get(args[1]));
+		DetectionServer server = new DetectionServer(db, port, threads);
+		server.start();
+
+		System.out.println("Detecting languages on http://localhost:" + server.getPort() + "/detect");
+	}
+
+	// adds new labelled records to a profile file, ranking only the languages in them again
+	private static void train(String[] args) throws Exception {
+		Path profile = Paths.get(args[1]);
+		// the sketches are saved again with the updated profiles
+		Database db = ProfileFile.load(profile, true);
+
+		Set<Language> updated = IncrementalTrainer.train(db, Paths.get(args[2]));
+		ProfileFile.save(db, profile);
+
+		System.out.println("Updated " + updated.size() + " languages " + updated + " in " + profile);
+	}
+
+	// prints the language of each part of a file that mixes languages
+	private static void segment(String[] args) throws Exception {
+		int window = args.length > 3 ? Integer.parseInt(args[3]) : LanguageSegmenter.DEFAULT_WINDOW;
+		int step = args.length > 4 ? Integer.parseInt(args[4]) : LanguageSegmenter.DEFAULT_STEP;
+
+		Database db = ProfileFile.load(Paths.get(args[1]));
+		List<LanguageSpan> spans = new LanguageSegmenter(db, window, step).segment(Paths.get(args[2]));
+
+		for (LanguageSpan span : spans) {
+			System.out.println(span.getStart() + "-" + span.getEnd() + "\t" + span.getLanguage()
+					+ "\t" + String.format("%.3f", span.getConfidence()));
+		}
 	}
 }
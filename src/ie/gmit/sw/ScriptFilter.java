@@ -0,0 +1,102 @@
+package ie.gmit.sw;
+
+import java.util.BitSet;
+
+/**
+ * ScriptFilter class
+ * The cheap first stage of detection. Counts the Unicode scripts (Latin, Cyrillic, Arabic, Han ...) of some text,
+ * so that only the languages written in the same script as the query need the full out of place scoring.
+ *
+ * count(CharSequence text, int from, int to, int[] counts)
+ * 		-Adds 1 to the count of the script of each letter. Digits, punctuation and spaces (the Common script) are not counted,
+ * 		 nor are the rare letters outside the Basic Multilingual Plane.
+ *
+ * scripts(int[] counts, double minShare)
+ * 		-Returns the scripts that make up at least minShare of the counted letters.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class ScriptFilter {
+
+	// a script has to be at least this share of the training letters of a language to be one of its scripts
+	public static final double LANGUAGE_SHARE = 0.05;
+
+	// a script has to be at least this share of the query letters to be used to pick candidates
+	public static final double QUERY_SHARE = 0.2;
+
+	// number of scripts, the size of a counts array
+	public static final int SCRIPTS = Character.UnicodeScript.values().length;
+
+	private ScriptFilter() {
+	}
+
+	/**
+	 * Adds 1 to the count of the script of each letter between from and to.
+	 *
+	 * @param text
+	 * @param from
+	 * @param to
+	 * @param counts
+	 */
+	public static void count(CharSequence text, int from, int to, int[] counts) {
+		// the script of the last character, most text stays in one script so this skips most lookups
+		int lastChar = -1;
+		int lastScript = -1;
+
+		for (int i = from; i < to; i++) {
+			char c = text.charAt(i);
+
+			// quick path for ASCII
+			if (c < 0x80) {
+				if ((c | 0x20) >= 'a' && (c | 0x20) <= 'z') {
+					counts[Character.UnicodeScript.LATIN.ordinal()]++;
+				}
+				continue;
+			}
+			if (Character.isSurrogate(c) || !Character.isLetter(c)) {
+				continue;
+			}
+
+			if (c != lastChar) {
+				lastChar = c;
+				lastScript = Character.UnicodeScript.of(c).ordinal();
+			}
+			counts[lastScript]++;
+		}
+	}
+
+	/**
+	 * Adds 1 to the count of the script of each letter of the text.
+	 *
+	 * @param text
+	 * @param counts
+	 */
+	public static void count(CharSequence text, int[] counts) {
+		count(text, 0, text.length(), counts);
+	}
+
+	/**
+	 * Returns the scripts that make up at least minShare of the counted letters.
+	 * The set is empty if no letters were counted.
+	 *
+	 * @param counts
+	 * @param minShare
+	 * @return
+	 */
+	public static BitSet scripts(int[] counts, double minShare) {
+		long total = 0;
+		for (int count : counts) {
+			total += count;
+		}
+
+		BitSet scripts = new BitSet(SCRIPTS);
+		for (int s = 0; s < counts.length; s++) {
+			if (counts[s] > 0 && counts[s] >= minShare * total) {
+				scripts.set(s);
+			}
+		}
+		return scripts;
+	}
+}
@@ -0,0 +1,251 @@
+package ie.gmit.sw;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * StreamingDetector class
+ * Detects the language of a query of any size by reading it in fixed size chunks,
+ * instead of loading the whole query into a String first.
+ * 
+ * detect(Reader in)
+ * 		-Reads the query chunk by chunk into one reused buffer.
+ * 		-The kmers of each chunk are hashed and counted by a QueryProfiler.
+ * 		-The last characters of a chunk are carried over to the next one, so kmers that cross a chunk boundary are counted once.
+ * 		-The Unicode scripts of the first SCRIPT_SAMPLE characters are counted to pick the candidate languages (see ScriptFilter).
+ * 		-At the end of the input the profileSize most frequent kmers (see ProfileConfig) are ranked with TopK and scored against the candidate languages.
+ * 
+ * Early exit mode (setEarlyExit)
+ * 		-Every checkInterval characters the partial query profile is ranked and scored against the database.
+ * 		-As soon as the best language is ahead of the runner-up by at least margin (a fraction of the runner-up distance)
+ * 		 the rest of the input is not read and the best language is returned.
+ * 		-getCharsRead() tells how much of the input was needed.
+ * 
+ * The kmer counts are pruned to the most frequent MAX_KMERS_PER_RANK times profileSize kmers (see QueryProfiler.setMaxKmers()),
+ * so the memory used is the chunk buffer plus at most that many counts and the kmers of one chunk, whatever the size of the input.
+ * A StreamingDetector only reads the database, but each instance must only be used by one thread at a time.
+ * 
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class StreamingDetector {
+
+	// default number of characters read at a time
+	public static final int DEFAULT_CHUNK = 8192;
+
+	// number of characters at the start of the query used to find its scripts
+	public static final int SCRIPT_SAMPLE = 65536;
+
+	// distinct kmers counted per ranked kmer of the profile before the least frequent are pruned
+	public static final int MAX_KMERS_PER_RANK = 16;
+
+	// variables
+	private final Database db;
+	// counts the kmers and scripts of the query and ranks them
+	private final QueryProfiler profiler;
+	private final char[] buffer;
+	private final CharBuffer text;
+	// early exit settings, the margin is 0 when early exit is off
+	private int checkInterval = 0;
+	private double margin = 0;
+	// characters read by the last detect()
+	private long charsRead;
+	// number of ranked kmers in the query profile of the last detect()
+	private int querySize;
+
+	// constructors
+	public StreamingDetector(Database db) {
+		this(db, DEFAULT_CHUNK);
+	}
+
+	public StreamingDetector(Database db, int chunkSize) {
+		super();
+		this.db = db;
+		this.profiler = new QueryProfiler(db);
+		this.profiler.setMaxKmers(MAX_KMERS_PER_RANK * db.getConfig().getProfileSize());
+
+		// room for a chunk plus the characters carried over from the chunk before
+		this.buffer = new char[chunkSize + profiler.getMaxN() - 1];
+		this.text = CharBuffer.wrap(buffer);
+	}
+
+	/**
+	 * Turns on early exit. The partial query is scored every checkInterval characters and reading stops once
+	 * the best language is closer than the runner-up by at least margin times the runner-up distance.
+	 * A margin of 0 turns early exit off.
+	 * 
+	 * @param checkInterval
+	 * @param margin
+	 */
+	public void setEarlyExit(int checkInterval, double margin) {
+		if (checkInterval < 1 || margin < 0 || margin >= 1) {
+			throw new IllegalArgumentException("Invalid early exit settings " + checkInterval + ", " + margin);
+		}
+		this.checkInterval = checkInterval;
+		this.margin = margin;
+	}
+
+	// accessor methods
+	public int getCheckInterval() {
+		return checkInterval;
+	}
+
+	public double getMargin() {
+		return margin;
+	}
+
+	public long getCharsRead() {
+		return charsRead;
+	}
+
+	/**
+	 * Returns the number of ranked kmers in the query profile of the last detect(), 0 if the query had no kmers.
+	 * 
+	 * @return
+	 */
+	public int getQuerySize() {
+		return querySize;
+	}
+
+	/**
+	 * Returns true if the scripts of the last detect() were found, false if its first SCRIPT_SAMPLE characters had no letters.
+	 * 
+	 * @return
+	 */
+	public boolean hasLetters() {
+		return !profiler.scripts().isEmpty();
+	}
+
+	/**
+	 * Detects the language of a UTF-8 file.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public OutOfPlaceMetric detect(Path file) throws IOException {
+		try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return detect(in);
+		}
+	}
+
+	/**
+	 * Detects the language of UTF-8 text read from the channel.
+	 * 
+	 * @param channel
+	 * @return
+	 * @throws IOException
+	 */
+	public OutOfPlaceMetric detect(ReadableByteChannel channel) throws IOException {
+		return detect(Channels.newReader(channel, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reads the query chunk by chunk, counts its kmers and scores the ranked query profile against the database.
+	 * The reader is read to the end but not closed.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public OutOfPlaceMetric detect(Reader in) throws IOException {
+		return detect(in, 1)[0];
+	}
+
+	/**
+	 * The same as detect(in, n) but returns LanguageMatches with a normalized score and confidence (see Database.rank()).
+	 * 
+	 * @param in
+	 * @param n
+	 * @return
+	 * @throws IOException
+	 */
+	public LanguageMatch[] rank(Reader in, int n) throws IOException {
+		// enough languages for a confidence that does not depend on n
+		return db.rank(detect(in, Math.max(n, Database.CONFIDENCE_LANGUAGES)), querySize, n);
+	}
+
+	/**
+	 * The same as detect(in) but returns the OutOfPlaceMetrics of the n closest languages, closest first.
+	 * 
+	 * @param in
+	 * @param n
+	 * @return
+	 * @throws IOException
+	 */
+	public OutOfPlaceMetric[] detect(Reader in, int n) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return scan(in, n);
+		} finally {
+			Metrics.get().detected(System.nanoTime() - start);
+		}
+	}
+
+	// reads the query and scores it, returning early if the early exit margin is reached
+	private OutOfPlaceMetric[] scan(Reader in, int n) throws IOException {
+		profiler.reset();
+		charsRead = 0;
+
+		// number of characters in the buffer
+		int length = 0;
+		int read;
+		// characters read since the partial query was last scored
+		long sinceCheck = 0;
+
+		while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+			// count the scripts of the new characters while still in the sample
+			if (charsRead < SCRIPT_SAMPLE) {
+				profiler.countScripts(text, length, length + read);
+			}
+
+			length += read;
+			charsRead += read;
+			sinceCheck += read;
+			if (length < buffer.length) {
+				// keep filling the buffer
+				continue;
+			}
+
+			// count the kmers that start far enough from the end to be complete
+			int carry = profiler.getMaxN() - 1;
+			profiler.countKmers(text, 0, length, length - carry);
+
+			// move the last characters to the start of the buffer for the next chunk
+			System.arraycopy(buffer, length - carry, buffer, 0, carry);
+			length = carry;
+
+			// early exit - score the partial query and stop if the best language is far enough ahead
+			if (margin > 0 && sinceCheck >= checkInterval) {
+				sinceCheck = 0;
+				RankedProfile query = profiler.profile();
+				OutOfPlaceMetric[] top = db.getTopMatches(query, Math.max(n, 2), profiler.scripts());
+				if (top.length < 2 || isConfident(top[0], top[1])) {
+					querySize = query.size();
+					return Arrays.copyOf(top, Math.min(n, top.length));
+				}
+			}
+		}
+
+		// the rest of the input
+		profiler.countKmers(text, 0, length, length);
+
+		RankedProfile query = profiler.profile();
+		querySize = query.size();
+		return db.getTopMatches(query, n, profiler.scripts());
+	}
+
+	// true if the best distance beats the runner-up by at least the margin
+	private boolean isConfident(OutOfPlaceMetric best, OutOfPlaceMetric runnerUp) {
+		double gap = runnerUp.getAbsoluteDistance() - best.getAbsoluteDistance();
+		return gap >= margin * runnerUp.getAbsoluteDistance();
+	}
+}
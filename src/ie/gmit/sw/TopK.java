@@ -0,0 +1,137 @@
+package ie.gmit.sw;
+
+/**
+ * TopK class
+ * Keeps the k most frequent kmers offered to it in a bounded min-heap over primitive arrays,
+ * so ranking a language costs O(n log k) and never sorts or copies the whole frequency table.
+ *
+ * offer(long kmer, int frequency)
+ * 		-If the heap is not full the kmer is added.
+ * 		-Otherwise it replaces the least frequent kmer in the heap if it is more frequent.
+ *
+ * toProfile()
+ * 		-Empties the heap into a RankedProfile, most frequent kmer first.
+ *
+ * Kmers with the same frequency are ordered by kmer value, so the result does not depend on the order they were offered in.
+ * Can be passed to KmerTable.forEach() as a KmerTable.Visitor.
+ * This class is not thread safe.
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class TopK implements KmerTable.Visitor {
+
+	// variables
+	private final long[] kmers;
+	private final int[] frequencies;
+	private int size;
+
+	// constructor
+	public TopK(int k) {
+		super();
+		this.kmers = new long[k];
+		this.frequencies = new int[k];
+	}
+
+	@Override
+	public void visit(long kmer, int frequency) {
+		offer(kmer, frequency);
+	}
+
+	/**
+	 * Offers a kmer and its frequency to the heap.
+	 *
+	 * @param kmer
+	 * @param frequency
+	 */
+	public void offer(long kmer, int frequency) {
+		if (size < kmers.length) {
+			// not full yet - add at the bottom and move up
+			kmers[size] = kmer;
+			frequencies[size] = frequency;
+			siftUp(size++);
+		} else if (size > 0 && worse(kmers[0], frequencies[0], kmer, frequency)) {
+			// better than the worst kmer kept so far - replace the root and move down
+			kmers[0] = kmer;
+			frequencies[0] = frequency;
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * Empties the heap into a RankedProfile, most frequent kmer first.
+	 *
+	 * @return
+	 */
+	public RankedProfile toProfile() {
+		int n = size;
+		long[] ranked = new long[n];
+		int[] rankedFrequencies = new int[n];
+
+		// the root is always the worst kmer, so fill the arrays from the end
+		for (int i = n - 1; i >= 0; i--) {
+			ranked[i] = kmers[0];
+			rankedFrequencies[i] = frequencies[0];
+
+			size--;
+			kmers[0] = kmers[size];
+			frequencies[0] = frequencies[size];
+			siftDown(0);
+		}
+		return new RankedProfile(ranked, rankedFrequencies);
+	}
+
+	// accessor method
+	public int size() {
+		return size;
+	}
+
+	// true if a ranks below b - a lower frequency, or the same frequency and a larger kmer
+	private static boolean worse(long aKmer, int aFrequency, long bKmer, int bFrequency) {
+		return aFrequency < bFrequency || (aFrequency == bFrequency && aKmer > bKmer);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!worse(kmers[i], frequencies[i], kmers[parent], frequencies[parent])) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int left = 2 * i + 1;
+			if (left >= size) {
+				break;
+			}
+
+			// the worse of the two children
+			int child = left;
+			int right = left + 1;
+			if (right < size && worse(kmers[right], frequencies[right], kmers[left], frequencies[left])) {
+				child = right;
+			}
+
+			if (!worse(kmers[child], frequencies[child], kmers[i], frequencies[i])) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int i, int j) {
+		long kmer = kmers[i];
+		kmers[i] = kmers[j];
+		kmers[j] = kmer;
+
+		int frequency = frequencies[i];
+		frequencies[i] = frequencies[j];
+		frequencies[j] = frequency;
+	}
+}
@@ -0,0 +1,117 @@
+package ie.gmit.sw;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Workers class
+ * Creates the executors that the ingest pipeline, the batch detector and the detection server run their tasks on,
+ * so the threading model can be changed without changing those classes.
+ *
+ * Modes
+ * 		-PLATFORM - a fixed pool of ordinary threads.
+ * 		-FORK_JOIN - a work stealing ForkJoinPool with the given parallelism.
+ * 		-VIRTUAL - one virtual thread per task. Virtual threads need Java 21, on older Java PLATFORM is used instead.
+ *
+ * defaultCount() is the number of available cores, which is used instead of a fixed number of workers.
+ * The mode can be picked with -Ddetector.threads=platform|forkjoin|virtual, see defaultMode().
+ *
+ * @author G00362383 - Michael Mulholland
+ * @version 1.0
+ * @since Oxygen.3a Release (4.7.3a)
+ */
+public class Workers {
+
+	/**
+	 * The kind of threads tasks run on.
+	 */
+	public enum Mode {
+		PLATFORM,
+		FORK_JOIN,
+		VIRTUAL
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor() on Java 21 and later, null before that
+	private static final Method VIRTUAL_EXECUTOR = findVirtualExecutor();
+
+	private Workers() {
+	}
+
+	/**
+	 * Returns the number of available cores.
+	 *
+	 * @return
+	 */
+	public static int defaultCount() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Returns the mode named by the detector.threads system property, or PLATFORM if it is not set.
+	 *
+	 * @return
+	 */
+	public static Mode defaultMode() {
+		String mode = System.getProperty("detector.threads", "platform");
+		switch (mode.toLowerCase()) {
+		case "virtual":
+			return Mode.VIRTUAL;
+		case "forkjoin":
+		case "fork_join":
+			return Mode.FORK_JOIN;
+		default:
+			return Mode.PLATFORM;
+		}
+	}
+
+	/**
+	 * Returns true if this Java has virtual threads.
+	 *
+	 * @return
+	 */
+	public static boolean hasVirtualThreads() {
+		return VIRTUAL_EXECUTOR != null;
+	}
+
+	/**
+	 * Creates an executor for the mode. threads is the pool size for PLATFORM and the parallelism for FORK_JOIN,
+	 * VIRTUAL starts a new virtual thread for every task.
+	 * Tasks that block on each other, like the ingest readers and consumers, need threads to be at least the number of tasks.
+	 *
+	 * @param mode
+	 * @param threads
+	 * @return
+	 */
+	public static ExecutorService newExecutor(Mode mode, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be at least 1");
+		}
+
+		switch (mode) {
+		case VIRTUAL:
+			if (VIRTUAL_EXECUTOR != null) {
+				try {
+					return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+				} catch (ReflectiveOperationException e) {
+					// fall through to platform threads
+				}
+			}
+			return Executors.newFixedThreadPool(threads);
+		case FORK_JOIN:
+			return new ForkJoinPool(threads);
+		default:
+			return Executors.newFixedThreadPool(threads);
+		}
+	}
+
+	// looks up the Java 21 virtual thread executor without needing Java 21 to compile
+	private static Method findVirtualExecutor() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}